@@ -1,7 +1,11 @@
 package enigma;
 
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The reverse mapping is a dense
+ *  table over the range of characters when that range is compact, and an
+ *  open-addressed hash table otherwise, so both directions are O(1).
  *  @author Jake Kim
  */
 class Alphabet {
@@ -10,6 +14,21 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         this.alphabetPart = chars;
+        this._chars = chars.toCharArray();
+        if (_chars.length > MAX_SIZE) {
+            throw error("alphabet has more than %d characters", MAX_SIZE);
+        }
+        char lo = Character.MAX_VALUE, hi = Character.MIN_VALUE;
+        for (char ch : _chars) {
+            lo = (char) Math.min(lo, ch);
+            hi = (char) Math.max(hi, ch);
+        }
+        if (_chars.length == 0 || hi - lo < DENSE_SPAN) {
+            buildDense(lo, hi);
+        } else {
+            buildSparse();
+        }
+        _bytes = byteSymbols(_chars);
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -17,31 +36,193 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Return the byte alphabet: the BYTE_SYMBOLS characters 0 through
+     *  255, in order, each of which stands for the byte with its value. */
+    static Alphabet bytes() {
+        char[] chars = new char[BYTE_SYMBOLS];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) i;
+        }
+        return new Alphabet(new String(chars));
+    }
+
+    /** Returns true iff I am the byte alphabet, however I was made. */
+    boolean isBytes() {
+        return _bytes;
+    }
+
+    /** Returns true iff CHARS are the characters of the byte alphabet, in
+     *  order. */
+    private static boolean byteSymbols(char[] chars) {
+        if (chars.length != BYTE_SYMBOLS) {
+            return false;
+        }
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the characters written as SYMBOLS in a configuration or a
+     *  settings line.  In the byte alphabet, whose characters are mostly
+     *  unprintable, each is written as two hexadecimal digits and
+     *  whitespace is ignored; in any other alphabet, characters are
+     *  written as themselves and SYMBOLS is returned as it is. */
+    String decode(String symbols) {
+        if (!isBytes()) {
+            return symbols;
+        }
+        StringBuilder result = new StringBuilder();
+        int high = -1;
+        for (int i = 0; i < symbols.length(); i++) {
+            char ch = symbols.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            int digit = Character.digit(ch, HEX);
+            if (digit < 0) {
+                throw error("bad hexadecimal byte in %s", symbols);
+            } else if (high < 0) {
+                high = digit;
+            } else {
+                result.append((char) (high * HEX + digit));
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            throw error("odd number of hexadecimal digits in %s", symbols);
+        }
+        return result.toString();
+    }
+
+    /** Fill a dense table covering the characters LO through HI. */
+    private void buildDense(char lo, char hi) {
+        _base = lo;
+        _dense = new char[_chars.length == 0 ? 0 : hi - lo + 1];
+        for (int i = 0; i < _chars.length; i++) {
+            int slot = _chars[i] - lo;
+            if (_dense[slot] != 0) {
+                throw error("duplicate character %c in alphabet", _chars[i]);
+            }
+            _dense[slot] = (char) (i + 1);
+        }
+    }
+
+    /** Fill an open-addressed table with a load factor of at most 1/2. */
+    private void buildSparse() {
+        int bits = 1;
+        while ((1 << bits) < 2 * _chars.length) {
+            bits++;
+        }
+        _shift = Integer.SIZE - bits;
+        _keys = new char[1 << bits];
+        _values = new char[1 << bits];
+        int mask = _keys.length - 1;
+        for (int i = 0; i < _chars.length; i++) {
+            int slot = hash(_chars[i]);
+            while (_values[slot] != 0) {
+                if (_keys[slot] == _chars[i]) {
+                    throw error("duplicate character %c in alphabet",
+                                _chars[i]);
+                }
+                slot = (slot + 1) & mask;
+            }
+            _keys[slot] = _chars[i];
+            _values[slot] = (char) (i + 1);
+        }
+    }
+
+    /** Return the home slot of CH in the sparse table. */
+    private int hash(char ch) {
+        return (ch * HASH_MULTIPLIER) >>> _shift;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return this.alphabetPart.length();
+        return this._chars.length;
     }
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        return this.alphabetPart.indexOf(ch) != -1;
-
+        return toInt(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return this.alphabetPart.charAt(index);
+        return this._chars[index];
     }
 
     /** Returns the index of character preprocess(CH), which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar().  Returns -1 if CH
+     *  is not in the alphabet. */
     int toInt(char ch) {
-        return this.alphabetPart.indexOf(ch);
+        if (_dense != null) {
+            int slot = ch - _base;
+            if (slot < 0 || slot >= _dense.length) {
+                return -1;
+            }
+            return _dense[slot] - 1;
+        }
+        int mask = _keys.length - 1;
+        for (int slot = hash(ch); _values[slot] != 0;
+             slot = (slot + 1) & mask) {
+            if (_keys[slot] == ch) {
+                return _values[slot] - 1;
+            }
+        }
+        return -1;
     }
 
+    @Override
+    public String toString() {
+        return alphabetPart;
+    }
+
+    /** Number of characters in the byte alphabet. */
+    static final int BYTE_SYMBOLS = 256;
+
+    /** How a configuration's alphabet line asks for the byte alphabet.
+     *  Since its characters repeat, it cannot be an alphabet itself. */
+    static final String BYTE_ALPHABET = "0x00-0xFF";
+
+    /** Radix of the digits that write bytes. */
+    private static final int HEX = 16;
+
+    /** Largest alphabet whose indices fit the char-valued tables. */
+    static final int MAX_SIZE = Character.MAX_VALUE;
+
+    /** Widest character range that still gets a dense table (4 KB). */
+    private static final int DENSE_SPAN = 2048;
+
+    /** Fibonacci hashing multiplier for the sparse table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
     /** representing alphabet part.
      */
     private String alphabetPart;
 
+    /** My characters, in index order. */
+    private final char[] _chars;
+
+    /** True iff I am the byte alphabet. */
+    private final boolean _bytes;
+
+    /** Dense reverse table: index + 1 of character _base + K, or 0. */
+    private char[] _dense;
+
+    /** Lowest character covered by _dense. */
+    private char _base;
+
+    /** Keys of the sparse reverse table. */
+    private char[] _keys;
+
+    /** Index + 1 of the matching key in _keys, or 0 for an empty slot. */
+    private char[] _values;
+
+    /** Right shift that turns a 32-bit hash into a slot of _keys. */
+    private int _shift;
+
 }
@@ -0,0 +1,123 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Converts many messages at once, each under its own settings line,
+ *  for batch jobs of many short messages under different keys.  The
+ *  messages are laid out as the lanes of a LaneBatch and converted a
+ *  time step at a time across all lanes, so that the dependency chain
+ *  of each message's characters is interleaved with those of the others
+ *  instead of leaving the processor idle.
+ *
+ *  When the class enigma.VectorLanes is present (it is built from
+ *  directory vector, separately, since it needs the incubating
+ *  jdk.incubator.vector module) and that module has been added to the
+ *  running JVM (with --add-modules jdk.incubator.vector), the lanes are
+ *  converted by it, several to a SIMD register with gathers from the
+ *  wiring tables.  Otherwise they are converted by the scalar reference
+ *  in LaneBatch.  Each message converts exactly as Machine.convert(String)
+ *  would convert it just after the machine was set up by its line.
+ *  @author Jake Kim
+ */
+final class BatchConverter {
+
+    /** A converter for machines of CONFIG, whose settings cache, if any,
+     *  compiles its settings lines. */
+    BatchConverter(Configuration config) {
+        this(config, defaultKernel());
+    }
+
+    /** A converter for machines of CONFIG converting by KERNEL. */
+    BatchConverter(Configuration config, LaneKernel kernel) {
+        _config = config;
+        _kernel = kernel;
+    }
+
+    /** Return the conversions of MESSAGES[I] under settings line
+     *  SETTINGS[I], for each I.  Whitespace in the messages is
+     *  dropped. */
+    String[] convert(String[] settings, String[] messages) {
+        if (settings.length != messages.length) {
+            throw EnigmaException.error("%d settings for %d messages",
+                                        settings.length, messages.length);
+        }
+        Alphabet alphabet = _config.alphabet();
+        MessageProcessor processor = new MessageProcessor(_config);
+        CompiledSettings[] compiled = new CompiledSettings[settings.length];
+        int[][] texts = new int[messages.length][];
+        try {
+            for (int i = 0; i < settings.length; i += 1) {
+                processor.setUp(settings[i]);
+                compiled[i] = processor.machine().compile();
+                texts[i] = indices(alphabet, messages[i]);
+            }
+        } finally {
+            processor.endSection();
+        }
+        LaneBatch batch = new LaneBatch(compiled, texts);
+        _kernel.convert(batch);
+        int[][] results = batch.results();
+        String[] converted = new String[results.length];
+        for (int i = 0; i < results.length; i += 1) {
+            char[] chars = new char[results[i].length];
+            for (int j = 0; j < chars.length; j += 1) {
+                chars[j] = alphabet.toChar(results[i][j]);
+            }
+            converted[i] = new String(chars);
+        }
+        return converted;
+    }
+
+    /** Return my kernel. */
+    LaneKernel kernel() {
+        return _kernel;
+    }
+
+    /** Return the indices in ALPHABET of the characters of MSG other than
+     *  whitespace. */
+    private static int[] indices(Alphabet alphabet, String msg) {
+        int[] result = new int[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                result[n++] = MachineState.index(alphabet, ch);
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /** Return the vector kernel, if it was built and its module is
+     *  present, and otherwise the scalar one. */
+    static LaneKernel defaultKernel() {
+        try {
+            return (LaneKernel) Class.forName(VECTOR_KERNEL)
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return SCALAR;
+        }
+    }
+
+    /** Name of the vector kernel's class. */
+    static final String VECTOR_KERNEL = "enigma.VectorLanes";
+
+    /** The kernel converting by LaneBatch's scalar reference. */
+    static final LaneKernel SCALAR = new LaneKernel() {
+        @Override
+        public void convert(LaneBatch batch) {
+            batch.convertAll();
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    };
+
+    /** The machine configuration. */
+    private final Configuration _config;
+
+    /** Converts the lanes. */
+    private final LaneKernel _kernel;
+
+}
@@ -0,0 +1,266 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many input files, each to an output file of its own, under
+ *  one Configuration read once, on a fixed pool of worker threads.  Each
+ *  file is processed exactly as Main processes a single input file, on a
+ *  MessageProcessor (and so a machine) of its own, while the compiled
+ *  configuration and its settings and keystream caches are shared.  An
+ *  error in one file is reported and does not stop the others.
+ *  @author Jake Kim
+ */
+final class BatchJob {
+
+    /** A job with no files converting under CONFIG on THREADS threads. */
+    BatchJob(Configuration config, int threads) {
+        if (threads < 1) {
+            throw error("batch needs at least one thread");
+        }
+        _config = config;
+        _threads = threads;
+    }
+
+    /** Add the conversion of file INPUT into file OUTPUT. */
+    void add(Path input, Path output) {
+        _inputs.add(input);
+        _outputs.add(output);
+    }
+
+    /** Add the conversion of each regular file in directory INPUT, in
+     *  order of name, into the file of the same name in directory OUTPUT,
+     *  which is created if need be and must not be INPUT. */
+    void addDirectory(String input, String output) {
+        Path from = path(input), to = path(output);
+        ArrayList<Path> files = new ArrayList<Path>();
+        try {
+            Files.createDirectories(to);
+            if (Files.isSameFile(from, to)) {
+                throw error("batch output directory %s is its input", output);
+            }
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(from)) {
+                for (Path file : dir) {
+                    if (Files.isRegularFile(file)) {
+                        files.add(file);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not list %s: %s", input, excp.getMessage());
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            add(file, to.resolve(file.getFileName()));
+        }
+    }
+
+    /** Add the conversions listed in the manifest file NAME, each on a
+     *  line of its own as an input file name and an output file name
+     *  separated by whitespace.  Blank lines are ignored. */
+    void addManifest(String name) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path(name), Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+        for (int i = 0; i < lines.size(); i += 1) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] names = line.split("\\s+");
+            if (names.length != 2) {
+                throw error("%s:%d: expected an input and an output file",
+                            name, i + 1);
+            }
+            add(path(names[0]), path(names[1]));
+        }
+    }
+
+    /** Return the number of files to convert. */
+    int size() {
+        return _inputs.size();
+    }
+
+    /** Convert all my files, printing the size and time of each on REPORT
+     *  in order as it and all before it are done, followed by the totals
+     *  and aggregate throughput, and the error of each file that failed on
+     *  ERRORS.  Return the number of files that failed. */
+    int run(PrintStream report, PrintStream errors) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+        long start = System.nanoTime(), bytes = 0;
+        int failed = 0;
+        try {
+            for (int i = 0; i <= _inputs.size(); i += 1) {
+                if (i < _inputs.size()) {
+                    pending.add(pool.submit(fileTask(i)));
+                }
+                while (!pending.isEmpty()
+                       && (pending.peek().isDone() || i == _inputs.size()
+                           || pending.size() > MAX_PENDING * _threads)) {
+                    Result result = await(pending.remove());
+                    if (result._error != null) {
+                        errors.printf("Error: %s: %s%n", result._input,
+                                      result._error);
+                        failed += 1;
+                    } else {
+                        report.printf("%s -> %s: %d bytes in %.1f ms%n",
+                                      result._input, result._output,
+                                      result._bytes, result._nanos / 1e6);
+                        bytes += result._bytes;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report.printf("%d files, %d bytes in %.3f s: %.1f MB/s on %d "
+                      + "threads%n", _inputs.size() - failed, bytes, seconds,
+                      bytes / 1e6 / seconds, _threads);
+        report.flush();
+        return failed;
+    }
+
+    /** Return a task converting file number I, which records any error,
+     *  expected or not, in its result rather than throwing it. */
+    private Callable<Result> fileTask(final int i) {
+        return new Callable<Result>() {
+            @Override
+            public Result call() {
+                Result result = new Result(_inputs.get(i), _outputs.get(i));
+                long start = System.nanoTime();
+                try {
+                    result._bytes = convert(result._input, result._output);
+                    result._nanos = System.nanoTime() - start;
+                } catch (EnigmaException excp) {
+                    result._error = excp.getMessage();
+                } catch (RuntimeException excp) {
+                    result._error = excp.toString();
+                }
+                return result;
+            }
+        };
+    }
+
+    /** Convert file INPUT into file OUTPUT on a new MessageProcessor,
+     *  returning the size of INPUT in bytes.  As with Main, whatever was
+     *  converted before an error is still written. */
+    private long convert(Path input, Path output) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(input);
+        } catch (IOException excp) {
+            throw error("could not open %s", input);
+        }
+        try (LineReader in = new LineReader(channel,
+                                            Charset.defaultCharset())) {
+            long size = channel.size();
+            Writer writer;
+            try {
+                writer = new OutputStreamWriter(Files.newOutputStream(output),
+                                                Charset.defaultCharset());
+            } catch (IOException excp) {
+                throw error("could not open %s", output);
+            }
+            MessageWriter out = new MessageWriter(writer);
+            try {
+                new MessageProcessor(_config).process(in, out, false);
+            } finally {
+                out.flush();
+                writer.close();
+            }
+            return size;
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", output, excp.getMessage());
+        }
+    }
+
+    /** Return the result of file task RESULT, waiting if necessary. */
+    private static Result await(Future<Result> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("batch failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the path named NAME. */
+    private static Path path(String name) {
+        try {
+            return Paths.get(name);
+        } catch (InvalidPathException excp) {
+            throw error("bad file name %s", name);
+        }
+    }
+
+    /** The outcome of converting one file. */
+    private static final class Result {
+
+        /** The result of converting INPUT into OUTPUT, so far. */
+        Result(Path input, Path output) {
+            _input = input;
+            _output = output;
+        }
+
+        /** The file converted. */
+        private final Path _input;
+
+        /** The file written. */
+        private final Path _output;
+
+        /** Size of _input in bytes. */
+        private long _bytes;
+
+        /** Time taken to convert _input, in nanoseconds. */
+        private long _nanos;
+
+        /** Why the conversion failed, or null if it did not. */
+        private String _error;
+    }
+
+    /** Most files in flight per thread. */
+    private static final int MAX_PENDING = 4;
+
+    /** The machine configuration shared by all files. */
+    private final Configuration _config;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** Files to convert. */
+    private final ArrayList<Path> _inputs = new ArrayList<Path>();
+
+    /** Files to write, parallel to _inputs. */
+    private final ArrayList<Path> _outputs = new ArrayList<Path>();
+
+}
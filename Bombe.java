@@ -0,0 +1,430 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A Turing-Welchman Bombe: finds the rotor orders and settings at which a
+ *  crib could be the plaintext of a stretch of ciphertext.
+ *
+ *  At each rotor setting, the Bombe supposes that the test letter of the
+ *  menu is plugged to some letter X, and follows the menu's edges to
+ *  what that implies of the other letters' plugs, using the scramblers at
+ *  the crib positions and the symmetry of the plugboard (the diagonal
+ *  board).  A supposition that implies two plugs for one letter is
+ *  false; a setting at which some supposition is not is a stop.  A wrong
+ *  setting usually fails every supposition within a few steps.
+ *
+ *  Rotor orders put a reflector in the leftmost slot, then rotors without
+ *  pawls, then numPawls() moving rotors.  Every setting of every rotor
+ *  but the reflector is tried, so the search visits size()^(numRotors()-1)
+ *  settings per order.  The work is split by rotor order and setting of
+ *  the leftmost rotor among a pool of threads, each with its own scratch
+ *  arrays, so that testing a setting allocates nothing.
+ *  @author Jake Kim
+ */
+final class Bombe {
+
+    /** Search for stops of the Bombe for CONFIG's machines and the crib
+     *  given by ARGS: a configuration file name, the ciphertext, the crib
+     *  and optionally the number of ciphertext letters before it.  Print
+     *  each stop as a settings line, using a thread per processor. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: Bombe CONFIG CIPHERTEXT CRIB [OFFSET]");
+            }
+            Configuration config = Configuration.read(args[0]);
+            int offset = 0;
+            if (args.length > 3) {
+                try {
+                    offset = Integer.parseInt(args[3]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad offset %s", args[3]);
+                }
+            }
+            Menu menu = new Menu(config.alphabet(), args[1], args[2], offset);
+            Bombe bombe = new Bombe(config, menu);
+            int threads = Runtime.getRuntime().availableProcessors();
+            List<Stop> stops = bombe.search(rotorOrders(config), threads);
+            for (Stop stop : stops) {
+                System.out.println(stop);
+            }
+            System.err.printf("%d stops; menu has %d loops%n", stops.size(),
+                              menu.loops());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A Bombe for machines as described by CONFIG, testing MENU. */
+    Bombe(Configuration config, Menu menu) {
+        if (!config.alphabet().toString()
+            .equals(menu.alphabet().toString())) {
+            throw error("menu and machines have different alphabets");
+        }
+        _config = config;
+        _menu = menu;
+    }
+
+    /** Return every rotor order CONFIG allows, as lists of rotor names,
+     *  reflector first. */
+    static List<String[]> rotorOrders(Configuration config) {
+        ArrayList<String> reflectors = new ArrayList<String>(),
+            fixed = new ArrayList<String>(), moving = new ArrayList<String>();
+        for (Rotor rotor : config.rotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        List<String[]> result = new ArrayList<String[]>();
+        String[] order = new String[config.numRotors()];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            addOrders(order, 1, config.numRotors() - config.numPawls(),
+                      fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT each way of filling ORDER from slot K on with unused
+     *  rotors from FIXED before slot MOVERS and from MOVING after it. */
+    private static void addOrders(String[] order, int k, int movers,
+                                  List<String> fixed, List<String> moving,
+                                  List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : k < movers ? fixed : moving) {
+            if (!Arrays.asList(order).subList(0, k).contains(name)) {
+                order[k] = name;
+                addOrders(order, k + 1, movers, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Return the stops at every setting of the rotor orders ORDERS, found
+     *  using THREADS threads, in the order of ORDERS and then of
+     *  settings. */
+    List<Stop> search(List<String[]> orders, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Stop>>> scans =
+                new ArrayList<Future<List<Stop>>>();
+            int size = _config.alphabet().size();
+            for (String[] order : orders) {
+                MachineSpec spec = _config.spec(order);
+                for (int first = 0; first < size; first += 1) {
+                    scans.add(pool.submit(new Scan(order, spec, first)));
+                }
+            }
+            List<Stop> result = new ArrayList<Stop>();
+            for (Future<List<Stop>> scan : scans) {
+                result.addAll(await(scan));
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the result of scan RESULT, waiting if necessary. */
+    private static List<Stop> await(Future<List<Stop>> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("scan failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** A test of every setting of one rotor order with a given setting of
+     *  its leftmost rotor. */
+    private final class Scan implements Callable<List<Stop>> {
+
+        /** A scan of the rotors ORDER, whose spec is SPEC, with the
+         *  leftmost rotor at setting FIRST. */
+        Scan(String[] order, MachineSpec spec, int first) {
+            _order = order;
+            _spec = spec;
+            _leftmost = first;
+        }
+
+        @Override
+        public List<Stop> call() {
+            int size = _spec.size(), slots = _spec.numRotors();
+            int crib = _menu.length();
+            _first = _menu.firsts();
+            _other = _menu.others();
+            _position = _menu.positions();
+            _start = new int[slots];
+            _positions = new int[slots];
+            _fast = new int[crib];
+            _table = new int[crib];
+            _inner = new int[crib * size];
+            _innerKey = new long[crib];
+            _innerUse = new long[crib];
+            _shareInner = Math.pow(size, slots - 2) < Long.MAX_VALUE;
+            _value = new int[size];
+            _stack = new int[size];
+            _touched = new int[size];
+            Arrays.fill(_value, -1);
+            Arrays.fill(_innerUse, -1);
+            Arrays.fill(_innerKey, -1);
+            _start[1] = _leftmost;
+            List<Stop> stops = new ArrayList<Stop>();
+            do {
+                test(stops);
+            } while (next());
+            return stops;
+        }
+
+        /** Move _start to the next setting with the same leftmost rotor
+         *  setting, returning false if there is none. */
+        private boolean next() {
+            for (int k = _start.length - 1; k > 1; k -= 1) {
+                if (++_start[k] < _spec.size()) {
+                    return true;
+                }
+                _start[k] = 0;
+            }
+            return false;
+        }
+
+        /** Add any stops at setting _start to STOPS. */
+        private void test(List<Stop> stops) {
+            int crib = _fast.length, last = _start.length - 1;
+            int[] p = _positions;
+            _tested += 1;
+            System.arraycopy(_start, 0, p, 0, p.length);
+            for (int i = 0; i <= _menu.offset(); i += 1) {
+                _spec.step(p);
+            }
+            for (int i = 0; i < crib; i += 1) {
+                if (i > 0) {
+                    _spec.step(p);
+                }
+                _fast[i] = p[last];
+                updateInner(i);
+            }
+            int test = _menu.testLetter();
+            for (int x = 0; x < _spec.size(); x += 1) {
+                if (close(test, x)) {
+                    stops.add(stop());
+                }
+                clear();
+            }
+        }
+
+        /** Follow the menu from the supposition that letter A is plugged
+         *  to X, recording the plugs implied in _value, and each letter
+         *  plugged in _touched.  Return false if the supposition implies
+         *  two plugs for some letter.  _value must be clear on entry. */
+        private boolean close(int a, int x) {
+            int[] value = _value, stack = _stack, touched = _touched;
+            int top = 0, n = 0;
+            value[a] = x;
+            touched[n++] = a;
+            stack[top++] = a;
+            if (x != a) {
+                value[x] = a;
+                touched[n++] = x;
+                stack[top++] = x;
+            }
+            boolean consistent = true;
+        follow:
+            while (top > 0) {
+                int b = stack[--top], v = value[b];
+                for (int e = _first[b], end = _first[b + 1]; e < end;
+                     e += 1) {
+                    int c = _other[e], w = scramble(_position[e], v);
+                    int old = value[c];
+                    if (old == w) {
+                        continue;
+                    }
+                    if (old >= 0 || value[w] >= 0) {
+                        consistent = false;
+                        break follow;
+                    }
+                    value[c] = w;
+                    touched[n++] = c;
+                    stack[top++] = c;
+                    if (w != c) {
+                        value[w] = c;
+                        touched[n++] = w;
+                        stack[top++] = w;
+                    }
+                }
+            }
+            _numTouched = n;
+            return consistent;
+        }
+
+        /** Point _table[I] at an inner table for crib position I, whose
+         *  settings are _positions.  Consecutive positions, and a position
+         *  and the one after it at the previous setting tested, usually
+         *  have the same settings left of the rightmost rotor, so tables
+         *  are shared and seldom computed. */
+        private void updateInner(int i) {
+            int[] positions = _positions;
+            int last = positions.length - 1, size = _spec.size();
+            long key = -1;
+            if (_shareInner) {
+                key = 0;
+                for (int k = 1; k < last; k += 1) {
+                    key = key * size + positions[k];
+                }
+                if (i > 0 && reuse(i, _table[i - 1], key)
+                    || i + 1 < _table.length && reuse(i, _table[i + 1], key)
+                    || reuse(i, _table[i], key)) {
+                    return;
+                }
+            }
+            while (_innerUse[_victim] == _tested) {
+                _victim = (_victim + 1) % _innerUse.length;
+            }
+            int t = _victim;
+            for (int c = 0; c < size; c += 1) {
+                _inner[t * size + c] = _spec.reflect(positions, last, c);
+            }
+            _innerKey[t] = key;
+            _innerUse[t] = _tested;
+            _table[i] = t;
+        }
+
+        /** If inner table T was computed for settings encoded as KEY, point
+         *  _table[I] at it and return true. */
+        private boolean reuse(int i, int t, long key) {
+            if (_innerKey[t] != key) {
+                return false;
+            }
+            _innerUse[t] = _tested;
+            _table[i] = t;
+            return true;
+        }
+
+        /** Return the result of the scrambler at crib position I on C. */
+        private int scramble(int i, int c) {
+            int last = _start.length - 1, p = _fast[i];
+            c = _inner[_table[i] * _spec.size() + _spec.forward(last, p, c)];
+            return _spec.backward(last, p, c);
+        }
+
+        /** Forget the plugs in _value. */
+        private void clear() {
+            while (_numTouched > 0) {
+                _value[_touched[--_numTouched]] = -1;
+            }
+        }
+
+        /** Return the stop at setting _start with the plugs in _value. */
+        private Stop stop() {
+            Alphabet alphabet = _spec.alphabet();
+            char[] setting = new char[_start.length - 1];
+            for (int k = 1; k < _start.length; k += 1) {
+                setting[k - 1] = alphabet.toChar(_start[k]);
+            }
+            StringBuilder cycles = new StringBuilder();
+            for (int a = 0; a < _value.length; a += 1) {
+                if (_value[a] > a) {
+                    if (cycles.length() > 0) {
+                        cycles.append(' ');
+                    }
+                    cycles.append('(').append(alphabet.toChar(a))
+                        .append(alphabet.toChar(_value[a])).append(')');
+                }
+            }
+            return new Stop(_order, new String(setting), cycles.toString());
+        }
+
+        /** Rotor names, reflector first. */
+        private final String[] _order;
+
+        /** The rotors' spec. */
+        private final MachineSpec _spec;
+
+        /** Setting of the leftmost rotor. */
+        private final int _leftmost;
+
+        /** The menu's edges, as for Menu.first(). */
+        private int[] _first;
+
+        /** The menu's edges, as for Menu.other(). */
+        private int[] _other;
+
+        /** The menu's edges, as for Menu.position(). */
+        private int[] _position;
+
+        /** The setting being tested. */
+        private int[] _start;
+
+        /** Rotor settings at the crib position being prepared. */
+        private int[] _positions;
+
+        /** Setting of the rightmost rotor at each crib position. */
+        private int[] _fast;
+
+        /** Inner table used at each crib position. */
+        private int[] _table;
+
+        /** Inner tables: the part of a scrambler to the left of the
+         *  rightmost rotor.  Table T maps C to _inner[T * size + C]. */
+        private int[] _inner;
+
+        /** Settings of the rotors between the reflector and the rightmost
+         *  rotor from which each inner table was computed, as digits base
+         *  size, or -1 if the table may not be shared. */
+        private long[] _innerKey;
+
+        /** True iff inner tables' settings fit in their keys, so that the
+         *  tables may be shared. */
+        private boolean _shareInner;
+
+        /** Value of _tested when each inner table was last used. */
+        private long[] _innerUse;
+
+        /** Next inner table to consider replacing. */
+        private int _victim;
+
+        /** Number of settings tested so far. */
+        private long _tested;
+
+        /** Letter each letter is plugged to, or -1 if not known. */
+        private int[] _value;
+
+        /** Letters whose edges are yet to be followed. */
+        private int[] _stack;
+
+        /** Letters plugged so far, in the first _numTouched entries. */
+        private int[] _touched;
+
+        /** Number of letters in _touched. */
+        private int _numTouched;
+    }
+
+    /** Machine configuration. */
+    private final Configuration _config;
+
+    /** The crib's menu. */
+    private final Menu _menu;
+
+}
@@ -0,0 +1,137 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The suite of all JUnit tests for the Bombe and Menu classes.
+ *  @author Jake Kim
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private Alphabet alpha = new Alphabet();
+
+    /** Return a configuration of NUMROTORS slots and NUMPAWLS pawls
+     *  holding naval rotors I to IV, Beta, Gamma, B and C. */
+    private Configuration makeConfig(int numRotors, int numPawls) {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new MovingRotor("I", perm("(AELTPHQXRU) (BKNW) (CMOY) "
+                                             + "(DFG) (IV) (JZ) (S)"), "Q"));
+        rotors.add(new MovingRotor("II", perm("(FIXVYOMW) (CDKLHUP) (ESZ) "
+                                              + "(BJ) (GR) (NT) (A) (Q)"),
+                                   "E"));
+        rotors.add(new MovingRotor("III", perm("(ABDHPEJT) "
+                                               + "(CFLVMZOYQIRWUKXSG) (N)"),
+                                   "V"));
+        rotors.add(new MovingRotor("IV", perm("(AEPLIYWCOXMRFZBSTGJQNH) "
+                                              + "(DV) (KU)"), "J"));
+        rotors.add(new FixedRotor("Beta", perm("(ALBEVFCYODJWUGNMQTZSKPR) "
+                                               + "(HIX)")));
+        rotors.add(new FixedRotor("Gamma",
+                                  perm("(AFNIRLBSQWVXGUZDKMTPCOYJHE)")));
+        rotors.add(new Reflector("B", perm("(AE) (BN) (CK) (DQ) (FU) (GY) "
+                                           + "(HW) (IJ) (LO) (MP) (RX) (SZ) "
+                                           + "(TV)")));
+        rotors.add(new Reflector("C", perm("(AR) (BD) (CO) (EJ) (FN) (GT) "
+                                           + "(HK) (IV) (LM) (PW) (QZ) (SX) "
+                                           + "(UY)")));
+        return new Configuration(alpha, numRotors, numPawls, rotors);
+    }
+
+    /** Return the permutation CYCLES of the upper-case alphabet. */
+    private Permutation perm(String cycles) {
+        return new Permutation(cycles, alpha);
+    }
+
+    /** Return MSG converted by a machine of CONFIG set up by SETTINGS. */
+    private String encipher(Configuration config, String settings,
+                            String msg) {
+        MessageProcessor processor = new MessageProcessor(config);
+        processor.setUp(settings);
+        return processor.machine().convert(msg);
+    }
+
+    /** A message whose start makes a good crib. */
+    private static final String MESSAGE =
+        "WETTERVORHERSAGEBISKAYAFROMHISSHOULDERHIAWATHA";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkFindsSetting() {
+        Configuration config = makeConfig(4, 3);
+        String cipher = encipher(config, "* B III IV I XLE (HQ) (EX) (IP) "
+                                 + "(TR) (BY) (AZ) (CK) (DM)", MESSAGE);
+        Menu menu = new Menu(alpha, cipher, MESSAGE.substring(0, 25), 0);
+        List<String[]> orders = new ArrayList<String[]>();
+        orders.add(new String[] { "B", "III", "IV", "I" });
+        orders.add(new String[] { "C", "II", "IV", "I" });
+        List<Stop> stops = new Bombe(config, menu).search(orders, 2);
+        boolean found = false;
+        for (Stop stop : stops) {
+            if (Arrays.equals(orders.get(0), stop.rotors())
+                && stop.setting().equals("XLE")) {
+                found = true;
+                for (String pair : "(AZ) (BY) (EX) (HQ) (IP) (RT)"
+                         .split(" ")) {
+                    assertTrue(stop + " lacks " + pair,
+                               stop.plugboard().contains(pair));
+                }
+            }
+        }
+        assertTrue("true setting not among " + stops, found);
+        assertTrue("too many stops: " + stops.size(), stops.size() < 10);
+    }
+
+    @Test
+    public void checkCribOffset() {
+        Configuration config = makeConfig(4, 3);
+        String cipher = encipher(config, "* C II IV I QEV (AB) (CD)",
+                                 MESSAGE);
+        Menu menu = new Menu(alpha, cipher, MESSAGE.substring(16, 40), 16);
+        List<String[]> orders = new ArrayList<String[]>();
+        orders.add(new String[] { "C", "II", "IV", "I" });
+        List<Stop> stops = new Bombe(config, menu).search(orders, 1);
+        boolean found = false;
+        for (Stop stop : stops) {
+            found |= stop.setting().equals("QEV");
+        }
+        assertTrue("true setting not among " + stops, found);
+    }
+
+    @Test
+    public void checkRotorOrders() {
+        List<String[]> orders = Bombe.rotorOrders(makeConfig(5, 3));
+        assertEquals(2 * 2 * 4 * 3 * 2, orders.size());
+        for (String[] order : orders) {
+            assertTrue(order[0].equals("B") || order[0].equals("C"));
+            assertTrue(order[1].equals("Beta") || order[1].equals("Gamma"));
+        }
+    }
+
+    @Test
+    public void checkMenu() {
+        Menu menu = new Menu(alpha, "ABCDE FG", "CBED", 1);
+        assertEquals(4, menu.length());
+        assertEquals(1, menu.offset());
+        assertEquals(8, menu.first(alpha.size()));
+        assertEquals(1, menu.loops());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSelfEnciphermentRejected() {
+        new Menu(alpha, "ABCDE", "XBY", 0);
+    }
+
+}
@@ -0,0 +1,79 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** Converts binary files, byte for byte, on a machine over the byte
+ *  alphabet.  The input and output files are memory-mapped a STRIDE at a
+ *  time and each stride converted straight from one mapping into the
+ *  other, with no decoding, whitespace stripping or grouping, so the
+ *  output is exactly as long as the input.  Converting a file onto
+ *  itself converts it in place.
+ *  @author Jake Kim
+ */
+final class ByteFileConverter {
+
+    /** A converter using MACHINE, whose alphabet must be the byte
+     *  alphabet, in its current state. */
+    ByteFileConverter(Machine machine) {
+        if (!machine.alphabet().isBytes()) {
+            throw error("converting binary files needs the byte alphabet %s",
+                        Alphabet.BYTE_ALPHABET);
+        }
+        _machine = machine;
+    }
+
+    /** Convert the file INPUT into the file OUTPUT, which is created or
+     *  replaced, or into INPUT itself if OUTPUT names the same file.
+     *  Returns the number of bytes converted. */
+    long convert(Path input, Path output) {
+        try {
+            if (Files.exists(output) && Files.isSameFile(input, output)) {
+                try (FileChannel file =
+                     FileChannel.open(input, StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE)) {
+                    return convert(file, file);
+                }
+            }
+            try (FileChannel in = FileChannel.open(input);
+                 FileChannel out =
+                     FileChannel.open(output, StandardOpenOption.CREATE,
+                                      StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING)) {
+                return convert(in, out);
+            }
+        } catch (IOException excp) {
+            throw error("could not convert %s to %s: %s", input, output,
+                        excp.getMessage());
+        }
+    }
+
+    /** Convert all of IN into OUT, which may be the same channel, a
+     *  STRIDE at a time, returning the number of bytes converted. */
+    private long convert(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        for (long pos = 0; pos < size; pos += STRIDE) {
+            long len = Math.min(STRIDE, size - pos);
+            MappedByteBuffer dst =
+                out.map(FileChannel.MapMode.READ_WRITE, pos, len);
+            MappedByteBuffer src = in == out ? dst
+                : in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            _machine.convertBytes(src, src == dst ? dst.duplicate() : dst);
+        }
+        return size;
+    }
+
+    /** Number of bytes mapped and converted at a time. */
+    static final int STRIDE = 1 << 26;
+
+    /** The machine converting. */
+    private final Machine _machine;
+
+}
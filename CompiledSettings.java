@@ -0,0 +1,54 @@
+package enigma;
+
+/** A settings line in the form a Machine runs: the spec of its rotor
+ *  order, its rotor settings and its plugboard, both as a permutation and
+ *  as a table.  Compiled settings are immutable, so any number of
+ *  machines may install the same ones.
+ *  @author Jake Kim
+ */
+final class CompiledSettings {
+
+    /** Settings with rotors SPEC at settings POSITIONS (by slot) and
+     *  plugboard PLUGBOARD, whose table is PLUGTABLE.  POSITIONS and
+     *  PLUGTABLE must not be modified afterwards. */
+    CompiledSettings(MachineSpec spec, int[] positions,
+                     Permutation plugboard, int[] plugTable) {
+        _spec = spec;
+        _positions = positions;
+        _plugboard = plugboard;
+        _plugTable = plugTable;
+    }
+
+    /** Return my rotors' spec. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return my rotor settings, by slot, which must not be modified. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return my plugboard's table, which must not be modified. */
+    int[] plugTable() {
+        return _plugTable;
+    }
+
+    /** Spec of the rotor order. */
+    private final MachineSpec _spec;
+
+    /** Rotor settings, by slot. */
+    private final int[] _positions;
+
+    /** The plugboard. */
+    private final Permutation _plugboard;
+
+    /** _plugboard as a table of indices. */
+    private final int[] _plugTable;
+
+}
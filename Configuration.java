@@ -0,0 +1,409 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The contents of a machine configuration: an alphabet, the number of rotor
+ *  slots and pawls, and the available rotors.  A configuration is read in
+ *  one pass from its text form, and may be saved as a compact binary
+ *  snapshot holding the alphabet, each rotor's permutation table and
+ *  notches, which later runs map and load without parsing any cycles.
+ *  Configuration files of either form may be given to Main.
+ *  @author Jake Kim
+ */
+final class Configuration {
+
+    /** A configuration with ALPHABET, NUMROTORS slots, NUMPAWLS pawls and
+     *  the available rotors ROTORS. */
+    Configuration(Alphabet alphabet, int numRotors, int numPawls,
+                  List<Rotor> rotors) {
+        if (numRotors <= 1 || numPawls < 0 || numPawls >= numRotors) {
+            throw error("bad rotor or pawl count: %d %d", numRotors,
+                        numPawls);
+        }
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _rotors = Collections.unmodifiableList(new ArrayList<Rotor>(rotors));
+        _registry = new RotorRegistry(_rotors);
+        _reflectors = new HashSet<String>();
+        for (Rotor rotor : _rotors) {
+            if (rotor.reflecting()) {
+                _reflectors.add(rotor.name());
+            }
+        }
+    }
+
+    /** Return the configuration in the file named NAME, which may be either
+     *  a text configuration or a snapshot, recording the load in
+     *  Metrics. */
+    static Configuration read(String name) {
+        Metrics.ConfigLoadEvent event = Metrics.configLoad();
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Paths.get(name))) {
+            if (channel.size() >= Integer.BYTES) {
+                ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+                channel.read(magic, 0);
+                if (magic.getInt(0) == MAGIC) {
+                    Configuration config =
+                        load(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                         channel.size()));
+                    Metrics.configLoaded(event, start, name, true);
+                    return config;
+                }
+            }
+            LineReader lines =
+                new LineReader(channel, Charset.defaultCharset());
+            Configuration config = parse(lines);
+            Metrics.configLoaded(event, start, name, false);
+            return config;
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the configuration described by the text read from LINES: an
+     *  alphabet line, the slot and pawl counts, and then one description
+     *  per rotor of its name, type (M followed by notches, N or R) and
+     *  cycles, whose cycles may continue onto lines that begin with "(".
+     *  An alphabet line of Alphabet.BYTE_ALPHABET gives the byte alphabet,
+     *  whose notches and cycles are written in hexadecimal. */
+    static Configuration parse(LineReader lines) {
+        if (!lines.next()) {
+            throw error("configuration file truncated");
+        }
+        String chars = lines.line().trim();
+        Alphabet alphabet = chars.equals(Alphabet.BYTE_ALPHABET)
+            ? Alphabet.bytes() : new Alphabet(chars);
+        int[] counts = new int[2];
+        int found = 0;
+        while (found < counts.length) {
+            if (!lines.next()) {
+                throw error("configuration file truncated");
+            }
+            for (String token : lines.line().trim().split("\\s+")) {
+                if (!token.isEmpty() && found < counts.length) {
+                    counts[found++] = parseCount(token);
+                }
+            }
+        }
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        StringBuilder description = null;
+        while (lines.next()) {
+            String line = lines.line().trim();
+            if (line.isEmpty()) {
+                continue;
+            } else if (line.charAt(0) == '(') {
+                if (description == null) {
+                    throw error("cycles before any rotor: %s", line);
+                }
+                description.append(' ').append(line);
+            } else {
+                if (description != null) {
+                    rotors.add(parseRotor(description.toString(), alphabet));
+                }
+                description = new StringBuilder(line);
+            }
+        }
+        if (description != null) {
+            rotors.add(parseRotor(description.toString(), alphabet));
+        }
+        return new Configuration(alphabet, counts[0], counts[1], rotors);
+    }
+
+    /** Return the count written as TOKEN. */
+    private static int parseCount(String token) {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException excp) {
+            throw error("bad rotor or pawl count: %s", token);
+        }
+    }
+
+    /** Return the rotor described by DESCRIPTION, a rotor's name, type and
+     *  cycles in ALPHABET. */
+    private static Rotor parseRotor(String description, Alphabet alphabet) {
+        int nameEnd = endOfWord(description, 0);
+        int typeStart = nameEnd;
+        while (typeStart < description.length()
+               && Character.isWhitespace(description.charAt(typeStart))) {
+            typeStart++;
+        }
+        int typeEnd = endOfWord(description, typeStart);
+        if (typeStart == typeEnd) {
+            throw error("bad rotor description: %s", description);
+        }
+        String name = description.substring(0, nameEnd);
+        String type = description.substring(typeStart, typeEnd);
+        Permutation perm =
+            new Permutation(description.substring(typeEnd), alphabet);
+        return makeRotor(name, type.charAt(0),
+                         alphabet.decode(type.substring(1)), perm);
+    }
+
+    /** Return the index just past the word of TEXT starting at START. */
+    private static int endOfWord(String text, int start) {
+        int end = start;
+        while (end < text.length() && text.charAt(end) != '('
+               && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /** Return a rotor named NAME of type KIND ('M', 'N' or 'R'), with
+     *  NOTCHES if it moves, and permutation PERM. */
+    private static Rotor makeRotor(String name, char kind, String notches,
+                                   Permutation perm) {
+        switch (kind) {
+        case MOVING:
+            return new MovingRotor(name, perm, notches);
+        case FIXED:
+            return new FixedRotor(name, perm);
+        case REFLECTOR:
+            return new Reflector(name, perm);
+        default:
+            throw error("bad rotor type %c for rotor %s", kind, name);
+        }
+    }
+
+    /** Return the configuration stored in SNAPSHOT, as written by save. */
+    static Configuration load(ByteBuffer snapshot) {
+        try {
+            if (snapshot.getInt() != MAGIC) {
+                throw error("not a configuration snapshot");
+            }
+            Alphabet alphabet = new Alphabet(getString(snapshot));
+            int numRotors = snapshot.getInt();
+            int numPawls = snapshot.getInt();
+            int count = snapshot.getInt();
+            int leastRotor = 1 + 2 * Integer.BYTES
+                + Character.BYTES * alphabet.size();
+            if (count < 0 || count > snapshot.remaining() / leastRotor) {
+                throw error("snapshot corrupt");
+            }
+            ArrayList<Rotor> rotors = new ArrayList<Rotor>(count);
+            int[] table = new int[alphabet.size()];
+            for (int i = 0; i < count; i++) {
+                char kind = (char) snapshot.get();
+                String name = getString(snapshot);
+                String notches = getString(snapshot);
+                for (int c = 0; c < table.length; c++) {
+                    table[c] = snapshot.getChar();
+                }
+                rotors.add(makeRotor(name, kind, notches,
+                                     new Permutation(table, alphabet)));
+            }
+            return new Configuration(alphabet, numRotors, numPawls, rotors);
+        } catch (BufferUnderflowException excp) {
+            throw error("configuration snapshot truncated");
+        }
+    }
+
+    /** Write me as a snapshot to the file named NAME. */
+    void save(String name) {
+        int size = 4 * Integer.BYTES + stringSize(_alphabet.toString());
+        for (Rotor rotor : _rotors) {
+            size += 1 + stringSize(rotor.name()) + stringSize(notches(rotor))
+                + Character.BYTES * _alphabet.size();
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC);
+        putString(out, _alphabet.toString());
+        out.putInt(_numRotors).putInt(_numPawls).putInt(_rotors.size());
+        for (Rotor rotor : _rotors) {
+            out.put((byte) kind(rotor));
+            putString(out, rotor.name());
+            putString(out, notches(rotor));
+            Permutation perm = rotor.permutation();
+            for (int c = 0; c < _alphabet.size(); c++) {
+                out.putChar((char) perm.permute(c));
+            }
+        }
+        out.flip();
+        Path path = Paths.get(name);
+        try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the type letter of ROTOR. */
+    private static char kind(Rotor rotor) {
+        if (rotor.reflecting()) {
+            return REFLECTOR;
+        }
+        return rotor.rotates() ? MOVING : FIXED;
+    }
+
+    /** Return the notches of ROTOR, or "" if it has none. */
+    private static String notches(Rotor rotor) {
+        return rotor instanceof MovingRotor
+            ? ((MovingRotor) rotor).notches() : "";
+    }
+
+    /** Return the number of bytes putString uses for S. */
+    static int stringSize(String s) {
+        return Integer.BYTES + Character.BYTES * s.length();
+    }
+
+    /** Put S into OUT as its length followed by its characters. */
+    static void putString(ByteBuffer out, String s) {
+        out.putInt(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            out.putChar(s.charAt(i));
+        }
+    }
+
+    /** Return a string written by putString from IN. */
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining() / Character.BYTES) {
+            throw error("snapshot corrupt");
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return my available rotors, which may not be modified. */
+    List<Rotor> rotors() {
+        return _rotors;
+    }
+
+    /** Return my rotor named NAME, in any case. */
+    Rotor rotor(String name) {
+        int i = _registry.find(name);
+        if (i < 0) {
+            throw error("misnamed rotor %s", name);
+        }
+        return _registry.get(i);
+    }
+
+    /** Return the spec of a machine holding the rotors named by ORDER,
+     *  reflector first. */
+    MachineSpec spec(String[] order) {
+        if (order.length != _numRotors) {
+            throw error("%d rotors named for %d slots", order.length,
+                        _numRotors);
+        }
+        List<Rotor> rotors = new ArrayList<Rotor>(order.length);
+        for (String name : order) {
+            rotors.add(rotor(name));
+        }
+        if (!rotors.get(0).reflecting()) {
+            throw error("Reflector is not at index 0");
+        }
+        return new MachineSpec(rotors);
+    }
+
+    /** Return true iff NAME is exactly the name of one of my reflectors. */
+    boolean isReflector(String name) {
+        return _reflectors.contains(name);
+    }
+
+    /** Return a new machine built from me. */
+    Machine newMachine() {
+        Machine machine =
+            new Machine(_alphabet, _numRotors, _numPawls, _registry);
+        machine.useKeystreams(_keystreams);
+        return machine;
+    }
+
+    /** Have the machines I build from now on share a cache of up to
+     *  TABLES keystream tables. */
+    void cacheKeystreams(int tables) {
+        _keystreams = new KeystreamCache(tables);
+    }
+
+    /** Return the cache of keystream tables my machines share, or
+     *  null. */
+    KeystreamCache keystreams() {
+        return _keystreams;
+    }
+
+    /** Have the MessageProcessors built from me from now on share a cache
+     *  of up to LINES compiled settings lines. */
+    void cacheSettings(int lines) {
+        _settingsCache = new SettingsCache(lines);
+    }
+
+    /** Return the cache of compiled settings lines my MessageProcessors
+     *  share, or null. */
+    SettingsCache settingsCache() {
+        return _settingsCache;
+    }
+
+    /** First four bytes of a snapshot: "ENG" and a format version. */
+    static final int MAGIC = 0x454E4701;
+
+    /** Type letter of a moving rotor. */
+    private static final char MOVING = 'M';
+
+    /** Type letter of a fixed rotor. */
+    private static final char FIXED = 'N';
+
+    /** Type letter of a reflector. */
+    private static final char REFLECTOR = 'R';
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _numPawls;
+
+    /** Available rotors. */
+    private final List<Rotor> _rotors;
+
+    /** Index of _rotors by name, shared by all my machines. */
+    private final RotorRegistry _registry;
+
+    /** Names of my reflectors. */
+    private final HashSet<String> _reflectors;
+
+    /** Keystream tables shared by my machines, or null. */
+    private KeystreamCache _keystreams;
+
+    /** Compiled settings lines shared by my MessageProcessors, or null. */
+    private SettingsCache _settingsCache;
+
+}
@@ -0,0 +1,373 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack.  First every setting of the given rotor
+ *  orders is ranked by the index of coincidence of the decipherment with
+ *  an empty plugboard, which rises as the rotors approach the right
+ *  setting whatever the plugs.  Then, from each of the best settings, a
+ *  PlugboardClimb finds plugs under which the decipherment scores best
+ *  by n-grams.  Both stages run as fork-join tasks, so that idle threads
+ *  steal work from busy ones.
+ *  @author Jake Kim
+ */
+final class HillClimber {
+
+    /** Search for the settings of CIPHERTEXT given by ARGS: a
+     *  configuration file name, the name of either a table saved by
+     *  NgramScorer or a text in the language of the plaintext from which
+     *  to learn trigram statistics, the ciphertext, and optionally how
+     *  many of the best settings to climb from (KEEP by default).  Print
+     *  the solutions, best first. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: HillClimber CONFIG CORPUS CIPHERTEXT "
+                            + "[KEEP]");
+            }
+            Configuration config = Configuration.read(args[0]);
+            NgramScorer scorer =
+                NgramScorer.isTable(args[1]) ? NgramScorer.read(args[1])
+                : NgramScorer.train(config.alphabet(), TRAINING_ORDER,
+                                    readText(args[1]));
+            int keep = KEEP;
+            if (args.length > 3) {
+                try {
+                    keep = Integer.parseInt(args[3]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad count %s", args[3]);
+                }
+            }
+            HillClimber climber = new HillClimber(config, args[2], scorer);
+            for (Solution solution
+                     : climber.search(Bombe.rotorOrders(config), keep)) {
+                System.out.println(solution);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private static String readText(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)),
+                              Charset.defaultCharset());
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** An attack on CIPHERTEXT, enciphered by one of CONFIG's machines,
+     *  that rates decipherments by SCORER and runs in POOL.  Whitespace in
+     *  CIPHERTEXT is ignored. */
+    HillClimber(Configuration config, String ciphertext, NgramScorer scorer,
+                ForkJoinPool pool) {
+        if (!config.alphabet().toString()
+            .equals(scorer.alphabet().toString())) {
+            throw error("scorer and machines have different alphabets");
+        }
+        _config = config;
+        _scorer = scorer;
+        _pool = pool;
+        int[] cipher = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                cipher[n++] = MachineState.index(config.alphabet(), c);
+            }
+        }
+        _cipher = Arrays.copyOf(cipher, n);
+    }
+
+    /** An attack as above that runs in the common pool. */
+    HillClimber(Configuration config, String ciphertext, NgramScorer scorer) {
+        this(config, ciphertext, scorer, ForkJoinPool.commonPool());
+    }
+
+    /** Return the solutions from the KEEP best settings of the rotor
+     *  orders ORDERS, best first. */
+    List<Solution> search(List<String[]> orders, int keep) {
+        return climb(rank(orders, keep));
+    }
+
+    /** Return the KEEP settings of the rotor orders ORDERS whose
+     *  decipherments with no plugboard have the highest index of
+     *  coincidence, best first, as Stops with no plugboard. */
+    List<Stop> rank(List<String[]> orders, int keep) {
+        if (keep < 1) {
+            throw error("must keep at least one setting");
+        }
+        MachineSpec[] specs = new MachineSpec[orders.size()];
+        for (int k = 0; k < specs.length; k += 1) {
+            specs[k] = _config.spec(orders.get(k));
+        }
+        int size = _config.alphabet().size();
+        Ranked[][] found = new Ranked[specs.length * size][];
+        _pool.invoke(new Rank(specs, keep, found, 0, found.length));
+        PriorityQueue<Ranked> best =
+            new PriorityQueue<Ranked>(keep + 1, BY_COINCIDENCES);
+        for (Ranked[] part : found) {
+            for (Ranked ranked : part) {
+                keepBest(best, keep, ranked);
+            }
+        }
+        Ranked[] sorted = best.toArray(new Ranked[best.size()]);
+        Arrays.sort(sorted, BY_COINCIDENCES.reversed());
+        List<Stop> result = new ArrayList<Stop>(sorted.length);
+        for (Ranked ranked : sorted) {
+            result.add(new Stop(orders.get(ranked._order),
+                                setting(ranked._positions), ""));
+        }
+        return result;
+    }
+
+    /** Return the solutions found by climbing from each of STARTS, whose
+     *  plugboards are ignored, best first. */
+    List<Solution> climb(List<Stop> starts) {
+        Solution[] found = new Solution[starts.size()];
+        _pool.invoke(new Climb(starts, found, 0, found.length));
+        Arrays.sort(found, Comparator.comparingDouble(Solution::score)
+                    .reversed());
+        return Arrays.asList(found);
+    }
+
+    /** Return the solution found by climbing from START. */
+    private Solution climb(Stop start) {
+        MachineSpec spec = _config.spec(start.rotors());
+        Alphabet alphabet = _config.alphabet();
+        String setting = start.setting();
+        if (setting.length() != spec.numRotors() - 1) {
+            throw error("setting %s is the wrong length", setting);
+        }
+        int[] positions = new int[spec.numRotors()];
+        for (int k = 1; k < positions.length; k += 1) {
+            positions[k] = MachineState.index(alphabet,
+                                              setting.charAt(k - 1));
+        }
+        PlugboardClimb climb =
+            new PlugboardClimb(spec, positions, _cipher, _scorer);
+        double score = climb.climb();
+        int[] plug = climb.plugboard();
+        StringBuilder cycles = new StringBuilder();
+        for (int c = 0; c < plug.length; c += 1) {
+            if (plug[c] > c) {
+                if (cycles.length() > 0) {
+                    cycles.append(' ');
+                }
+                cycles.append('(').append(alphabet.toChar(c))
+                    .append(alphabet.toChar(plug[c])).append(')');
+            }
+        }
+        int[] plain = climb.plaintext();
+        char[] text = new char[plain.length];
+        for (int i = 0; i < plain.length; i += 1) {
+            text[i] = alphabet.toChar(plain[i]);
+        }
+        return new Solution(new Stop(start.rotors(), setting,
+                                     cycles.toString()),
+                            new String(text), score);
+    }
+
+    /** Return the rotor setting string for settings POSITIONS. */
+    private String setting(int[] positions) {
+        char[] result = new char[positions.length - 1];
+        for (int k = 1; k < positions.length; k += 1) {
+            result[k - 1] = _config.alphabet().toChar(positions[k]);
+        }
+        return new String(result);
+    }
+
+    /** Add RANKED to BEST, which holds at most KEEP settings, if it is
+     *  better than the worst of them. */
+    private static void keepBest(PriorityQueue<Ranked> best, int keep,
+                                 Ranked ranked) {
+        if (best.size() < keep) {
+            best.add(ranked);
+        } else if (ranked._coincidences > best.peek()._coincidences) {
+            best.poll();
+            best.add(ranked);
+        }
+    }
+
+    /** A setting and its count of coincidences: pairs of positions of
+     *  its decipherment holding the same letter. */
+    private static final class Ranked {
+
+        /** Settings POSITIONS of rotor order number ORDER, with
+         *  COINCIDENCES coincidences. */
+        Ranked(int order, int[] positions, long coincidences) {
+            _order = order;
+            _positions = positions;
+            _coincidences = coincidences;
+        }
+
+        /** Rotor order number. */
+        private final int _order;
+
+        /** Rotor settings. */
+        private final int[] _positions;
+
+        /** Number of coincidences. */
+        private final long _coincidences;
+    }
+
+    /** Orders Ranked settings by coincidences. */
+    private static final Comparator<Ranked> BY_COINCIDENCES =
+        Comparator.comparingLong(r -> r._coincidences);
+
+    /** Ranks the settings of a run of rotor orders and leftmost rotor
+     *  settings. */
+    private final class Rank extends RecursiveAction {
+
+        /** Rank the settings of units LO through HI-1, unit U being order
+         *  U / size with leftmost rotor setting U % size, keeping the KEEP
+         *  best of each unit's settings in FOUND[U].  SPECS are the
+         *  orders' specs. */
+        Rank(MachineSpec[] specs, int keep, Ranked[][] found, int lo,
+             int hi) {
+            _specs = specs;
+            _keep = keep;
+            _found = found;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Rank(_specs, _keep, _found, _lo, mid),
+                          new Rank(_specs, _keep, _found, mid, _hi));
+                return;
+            } else if (_hi == _lo) {
+                return;
+            }
+            int size = _config.alphabet().size();
+            MachineSpec spec = _specs[_lo / size];
+            int[] start = new int[spec.numRotors()], p = start.clone();
+            int[] counts = new int[size];
+            start[1] = _lo % size;
+            PriorityQueue<Ranked> best =
+                new PriorityQueue<Ranked>(_keep + 1, BY_COINCIDENCES);
+            do {
+                System.arraycopy(start, 0, p, 0, p.length);
+                Arrays.fill(counts, 0);
+                for (int c : _cipher) {
+                    spec.step(p);
+                    counts[spec.reflect(p, p.length, c)] += 1;
+                }
+                long coincidences = 0;
+                for (int n : counts) {
+                    coincidences += (long) n * (n - 1);
+                }
+                if (best.size() < _keep
+                    || coincidences > best.peek()._coincidences) {
+                    keepBest(best, _keep, new Ranked(_lo / size,
+                                                     start.clone(),
+                                                     coincidences));
+                }
+            } while (next(start, size));
+            _found[_lo] = best.toArray(new Ranked[best.size()]);
+        }
+
+        /** Move START to the next setting with the same leftmost rotor
+         *  setting, where each rotor has SIZE settings, returning false if
+         *  there is none. */
+        private boolean next(int[] start, int size) {
+            for (int k = start.length - 1; k > 1; k -= 1) {
+                if (++start[k] < size) {
+                    return true;
+                }
+                start[k] = 0;
+            }
+            return false;
+        }
+
+        /** Specs of the rotor orders. */
+        private final MachineSpec[] _specs;
+
+        /** Number of settings to keep per unit. */
+        private final int _keep;
+
+        /** Best settings of each unit. */
+        private final Ranked[][] _found;
+
+        /** First unit. */
+        private final int _lo;
+
+        /** Last unit plus one. */
+        private final int _hi;
+    }
+
+    /** Climbs from a run of starting settings. */
+    private final class Climb extends RecursiveAction {
+
+        /** Climb from STARTS[LO] through STARTS[HI-1], putting the
+         *  solutions in FOUND. */
+        Climb(List<Stop> starts, Solution[] found, int lo, int hi) {
+            _starts = starts;
+            _found = found;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Climb(_starts, _found, _lo, mid),
+                          new Climb(_starts, _found, mid, _hi));
+            } else if (_hi > _lo) {
+                _found[_lo] = climb(_starts.get(_lo));
+            }
+        }
+
+        /** Starting settings. */
+        private final List<Stop> _starts;
+
+        /** Solutions, by start. */
+        private final Solution[] _found;
+
+        /** First start. */
+        private final int _lo;
+
+        /** Last start plus one. */
+        private final int _hi;
+    }
+
+    /** Letters per window of the statistics main learns. */
+    static final int TRAINING_ORDER = 3;
+
+    /** Default number of settings main climbs from. */
+    static final int KEEP = 100;
+
+    /** Machine configuration. */
+    private final Configuration _config;
+
+    /** Rates decipherments. */
+    private final NgramScorer _scorer;
+
+    /** Runs the search's tasks. */
+    private final ForkJoinPool _pool;
+
+    /** The ciphertext, as indices. */
+    private final int[] _cipher;
+
+}
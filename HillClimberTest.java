@@ -0,0 +1,182 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The suite of all JUnit tests for the HillClimber, PlugboardClimb and
+ *  NgramScorer classes.
+ *  @author Jake Kim
+ */
+public class HillClimberTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private Alphabet alpha = new Alphabet();
+
+    /** Return a configuration of four slots and three pawls holding naval
+     *  rotors I, III and IV and reflector B. */
+    private Configuration makeConfig() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new MovingRotor("I", perm("(AELTPHQXRU) (BKNW) (CMOY) "
+                                             + "(DFG) (IV) (JZ) (S)"), "Q"));
+        rotors.add(new MovingRotor("III", perm("(ABDHPEJT) "
+                                               + "(CFLVMZOYQIRWUKXSG) (N)"),
+                                   "V"));
+        rotors.add(new MovingRotor("IV", perm("(AEPLIYWCOXMRFZBSTGJQNH) "
+                                              + "(DV) (KU)"), "J"));
+        rotors.add(new Reflector("B", perm("(AE) (BN) (CK) (DQ) (FU) (GY) "
+                                           + "(HW) (IJ) (LO) (MP) (RX) (SZ) "
+                                           + "(TV)")));
+        return new Configuration(alpha, 4, 3, rotors);
+    }
+
+    /** Return the permutation CYCLES of the upper-case alphabet. */
+    private Permutation perm(String cycles) {
+        return new Permutation(cycles, alpha);
+    }
+
+    /** Return MSG converted by a machine of CONFIG set up by SETTINGS. */
+    private String encipher(Configuration config, String settings,
+                            String msg) {
+        MessageProcessor processor = new MessageProcessor(config);
+        processor.setUp(settings);
+        return processor.machine().convert(msg);
+    }
+
+    /** The rotor order of all tests. */
+    private static final String[] ORDER = { "B", "III", "IV", "I" };
+
+    /** A plaintext long enough to attack. */
+    private static final String MESSAGE =
+        "THEWEATHERREPORTFORTHEBAYOFBISCAYSAYSTHATTHEWINDWILLBESTRONG"
+        + "FROMTHENORTHWESTANDTHESEAWILLBEROUGHALLSHIPSSHOULDRETURNTO"
+        + "PORTBEFORENIGHTFALLANDAWAITFURTHERORDERSFROMHEADQUARTERSTHE"
+        + "CONVOYISEXPECTEDTOARRIVEATDAWNWITHSUPPLIESFORTHEGARRISONAND"
+        + "THEFLEETWILLESCORTITTHROUGHTHESTRAITSBEFORETHESTORMBREAKS";
+
+    /** A scorer trained on MESSAGE itself, under which MESSAGE is the
+     *  best decipherment. */
+    private NgramScorer scorer() {
+        return NgramScorer.train(alpha, 3, MESSAGE);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTrain() {
+        NgramScorer scorer = scorer();
+        assertEquals(3, scorer.order());
+        int[] common = { 19, 7, 4 }, unseen = { 16, 23, 25 };
+        assertTrue(scorer.window(common, 0) > scorer.window(unseen, 0));
+        int[] text = { 19, 7, 4, 16 };
+        assertEquals(scorer.window(text, 0) + scorer.window(text, 1),
+                     scorer.score(text, 0, 4), 1e-6);
+    }
+
+    @Test
+    public void checkSaveAndRead() throws IOException {
+        NgramScorer scorer = scorer();
+        File file = File.createTempFile("trigrams", ".ngr");
+        try {
+            scorer.save(file.getPath());
+            assertTrue(NgramScorer.isTable(file.getPath()));
+            NgramScorer mapped = NgramScorer.read(file.getPath());
+            assertEquals(3, mapped.order());
+            assertEquals(alpha.toString(), mapped.alphabet().toString());
+            int[] text = new int[MESSAGE.length()];
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = alpha.toInt(MESSAGE.charAt(i));
+            }
+            for (int i = 0; i + 3 <= text.length; i += 1) {
+                assertEquals(scorer.window(text, i), mapped.window(text, i),
+                             0);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkScoreChars() {
+        NgramScorer scorer = scorer();
+        int[] text = { 19, 7, 4, 16, 23 };
+        double expected = scorer.score(text, 0, 5);
+        assertEquals(expected,
+                     scorer.score("THEQX".toCharArray(), 0, 5), 1e-6);
+        assertEquals(expected,
+                     scorer.score(" THE Q\nX".toCharArray(), 0, 8), 1e-6);
+        assertEquals(scorer.score(text, 0, 3) + scorer.score(text, 2, 3),
+                     scorer.score("THE-EQX".toCharArray(), 0, 7), 1e-6);
+        int window = 0;
+        double rolled = 0;
+        for (int i = 0; i < text.length; i += 1) {
+            window = scorer.roll(window, text[i]);
+            if (i >= 2) {
+                rolled += scorer.logProbability(window);
+            }
+        }
+        assertEquals(expected, rolled, 1e-6);
+    }
+
+    @Test
+    public void checkClimbRecoversPlugboard() {
+        Configuration config = makeConfig();
+        String cipher = encipher(config, "* B III IV I XLE (HQ) (EX) (IP) "
+                                 + "(TR) (BY)", MESSAGE);
+        HillClimber climber = new HillClimber(config, cipher, scorer());
+        List<Solution> solutions =
+            climber.climb(Collections.singletonList(new Stop(ORDER, "XLE",
+                                                             "")));
+        Solution best = solutions.get(0);
+        assertEquals(MESSAGE, best.plaintext());
+        assertEquals("(BY) (EX) (HQ) (IP) (RT)", best.key().plugboard());
+    }
+
+    @Test
+    public void checkIncrementalScore() {
+        Configuration config = makeConfig();
+        String cipher = encipher(config, "* B III IV I QEV (AZ) (CK) (DM)",
+                                 MESSAGE);
+        NgramScorer scorer = scorer();
+        HillClimber climber = new HillClimber(config, cipher, scorer);
+        List<Stop> starts = new ArrayList<Stop>();
+        for (String setting : new String[] { "QEV", "AAA", "MNO" }) {
+            starts.add(new Stop(ORDER, setting, ""));
+        }
+        for (Solution solution : climber.climb(starts)) {
+            String plain = solution.plaintext();
+            int[] text = new int[plain.length()];
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = alpha.toInt(plain.charAt(i));
+            }
+            assertEquals(scorer.score(text, 0, text.length),
+                         solution.score(), 1e-6);
+        }
+    }
+
+    @Test
+    public void checkSearch() {
+        Configuration config = makeConfig();
+        String cipher = encipher(config, "* B III IV I MNO (AZ) (CK)",
+                                 MESSAGE);
+        HillClimber climber = new HillClimber(config, cipher, scorer());
+        List<String[]> orders = new ArrayList<String[]>();
+        orders.add(ORDER);
+        Solution best = climber.search(orders, 3).get(0);
+        assertEquals("MNO", best.key().setting());
+        assertEquals(MESSAGE, best.plaintext());
+    }
+
+}
@@ -0,0 +1,84 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded set of KeystreamTables, keyed by rotor order (and the
+ *  settings of the rotors that do not rotate), that forgets the least
+ *  recently used table when full.  One cache may be shared by the
+ *  machines of any number of threads; a table is built outside the
+ *  cache's lock, so a miss holds up no other machine.
+ *  @author Jake Kim
+ */
+final class KeystreamCache {
+
+    /** A cache holding at most CAPACITY tables. */
+    KeystreamCache(int capacity) {
+        if (capacity < 1) {
+            throw EnigmaException.error("keystream cache must hold at least "
+                                        + "one table");
+        }
+        _capacity = capacity;
+        _tables = new LinkedHashMap<String, KeystreamTable>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,
+                                                KeystreamTable> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return the table for rotors SPEC at settings POSITIONS, building it
+     *  if need be, or null if SPEC has too many settings for a table. */
+    KeystreamTable table(MachineSpec spec, int[] positions) {
+        if (!KeystreamTable.fits(spec)) {
+            return null;
+        }
+        String key = key(spec, positions);
+        synchronized (_tables) {
+            KeystreamTable table = _tables.get(key);
+            if (table != null) {
+                return table;
+            }
+        }
+        KeystreamTable table = new KeystreamTable(spec, positions);
+        synchronized (_tables) {
+            KeystreamTable raced = _tables.putIfAbsent(key, table);
+            return raced == null ? table : raced;
+        }
+    }
+
+    /** Return the number of tables I hold. */
+    int size() {
+        synchronized (_tables) {
+            return _tables.size();
+        }
+    }
+
+    /** Return my capacity. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the key of the table for SPEC at POSITIONS: the rotor names
+     *  in order, then the settings of the rotors that do not rotate. */
+    private static String key(MachineSpec spec, int[] positions) {
+        StringBuilder key = new StringBuilder();
+        for (int k = 0; k < spec.numRotors(); k += 1) {
+            key.append(spec.rotorName(k)).append(' ');
+        }
+        for (int k = 0; k < spec.numRotors(); k += 1) {
+            if (!spec.rotates(k)) {
+                key.append(positions[k]).append(',');
+            }
+        }
+        return key.toString();
+    }
+
+    /** Most tables held. */
+    private final int _capacity;
+
+    /** Tables by key, least recently used first. */
+    private final LinkedHashMap<String, KeystreamTable> _tables;
+
+}
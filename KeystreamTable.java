@@ -0,0 +1,145 @@
+package enigma;
+
+/** The whole keystream of one rotor order, precomputed.  The rotors that
+ *  do not rotate keep their settings, so the rotor settings of a machine
+ *  take at most size^pawls values, and at each the scrambler (the rotors
+ *  without the plugboard) is one fixed permutation.  A table numbers
+ *  those values, records for each the permutation and the value the next
+ *  keypress leads to, and so converts index C at value S by
+ *  plug[scramble(S, plug[C])] with no rotor arithmetic at all.
+ *
+ *  With 26 letters and three pawls the table is 26^4 bytes, about 450KB.
+ *  Tables are only made for alphabets of at most 256 letters and for
+ *  rotor orders whose table would hold at most MAX_ENTRIES bytes.
+ *  @author Jake Kim
+ */
+final class KeystreamTable {
+
+    /** Return true iff SPEC is small enough to have a table. */
+    static boolean fits(MachineSpec spec) {
+        if (spec.size() > BYTE_LETTERS) {
+            return false;
+        }
+        double entries = spec.size();
+        for (int k = 0; k < spec.numRotors(); k += 1) {
+            if (spec.rotates(k)) {
+                entries *= spec.size();
+            }
+        }
+        return entries <= MAX_ENTRIES;
+    }
+
+    /** The table of SPEC, which must fit, with its non-rotating rotors at
+     *  their settings in POSITIONS. */
+    KeystreamTable(MachineSpec spec, int[] positions) {
+        int size = spec.size(), slots = spec.numRotors();
+        _size = size;
+        _fixed = positions.clone();
+        int moving = 0;
+        for (int k = 0; k < slots; k += 1) {
+            if (spec.rotates(k)) {
+                moving += 1;
+            }
+        }
+        _moving = new int[moving];
+        for (int k = slots - 1; k >= 0; k -= 1) {
+            if (spec.rotates(k)) {
+                _moving[--moving] = k;
+                _fixed[k] = 0;
+            }
+        }
+        int states = 1;
+        for (int i = 0; i < _moving.length; i += 1) {
+            states *= size;
+        }
+        _scrambler = new byte[states * size];
+        _next = new int[states];
+        int[] p = _fixed.clone();
+        for (int s = 0; s < states; s += 1) {
+            positions(s, p);
+            for (int c = 0; c < size; c += 1) {
+                _scrambler[s * size + c] =
+                    (byte) spec.reflect(p, slots, c);
+            }
+            spec.step(p);
+            _next[s] = state(p);
+        }
+    }
+
+    /** Return true iff I am the table for rotor settings POSITIONS: that
+     *  is, iff the rotors that do not rotate are set as they were when I
+     *  was made. */
+    boolean covers(int[] positions) {
+        int m = 0;
+        for (int k = 0; k < positions.length; k += 1) {
+            if (m < _moving.length && _moving[m] == k) {
+                m += 1;
+            } else if (positions[k] != _fixed[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of rotor settings POSITIONS, which I must
+     *  cover. */
+    int state(int[] positions) {
+        int s = 0;
+        for (int k : _moving) {
+            s = s * _size + positions[k];
+        }
+        return s;
+    }
+
+    /** Set POSITIONS to the rotor settings numbered S. */
+    void positions(int s, int[] positions) {
+        System.arraycopy(_fixed, 0, positions, 0, _fixed.length);
+        for (int m = _moving.length - 1; m >= 0; m -= 1) {
+            positions[_moving[m]] = s % _size;
+            s /= _size;
+        }
+    }
+
+    /** Return the number of the rotor settings one keypress after those
+     *  numbered S. */
+    int next(int s) {
+        return _next[s];
+    }
+
+    /** Return the result of passing index C through the scrambler at the
+     *  rotor settings numbered S. */
+    int scramble(int s, int c) {
+        return _scrambler[s * _size + c] & BYTE_MASK;
+    }
+
+    /** Return the number of bytes my tables occupy, roughly. */
+    long footprint() {
+        return _scrambler.length + (long) Integer.BYTES * _next.length;
+    }
+
+    /** Largest scrambler table made, in bytes. */
+    static final int MAX_ENTRIES = 1 << 22;
+
+    /** Largest alphabet whose indices fit in a byte. */
+    private static final int BYTE_LETTERS = 256;
+
+    /** Mask selecting the low eight bits of an int. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Slots whose rotors rotate, left to right. */
+    private final int[] _moving;
+
+    /** Settings of the rotors that do not rotate, by slot (0 for those
+     *  that do). */
+    private final int[] _fixed;
+
+    /** The scrambler at settings S maps C to _scrambler[S * size + C]. */
+    private final byte[] _scrambler;
+
+    /** Number of the settings after each. */
+    private final int[] _next;
+
+}
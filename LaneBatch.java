@@ -0,0 +1,377 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Many messages, each with its own compiled settings, laid out to be
+ *  converted side by side: message I is lane I, and every array holds one
+ *  entry per lane for each slot or time step, lanes adjacent (structure of
+ *  arrays).  Lanes are numbered longest message first, so the lanes
+ *  still converting at any time step are a prefix 0 .. active(T) - 1,
+ *  and the characters of time step T of all those lanes are contiguous in
+ *  text() and out() from rowStart(T).
+ *
+ *  Rotor wirings are gathered from tables holding every distinct rotor
+ *  order in the batch, so lanes with different rotor orders still
+ *  convert by the same instructions.  convert(T, FROM, TO) is the scalar
+ *  reference for converting a run of lanes one time step, with exactly
+ *  the stepping of MachineSpec.step; a LaneKernel may convert the same
+ *  lanes more widely.
+ *  @author Jake Kim
+ */
+final class LaneBatch {
+
+    /** A batch converting MESSAGES[I], as indices, under SETTINGS[I]; all
+     *  the settings must have the same alphabet and number of slots. */
+    LaneBatch(CompiledSettings[] settings, int[][] messages) {
+        int n = settings.length;
+        if (n != messages.length) {
+            throw EnigmaException.error("%d settings for %d messages", n,
+                                        messages.length);
+        }
+        _lanes = n;
+        _message = new int[n];
+        Integer[] byLength = new Integer[n];
+        for (int i = 0; i < n; i += 1) {
+            byLength[i] = i;
+        }
+        Arrays.sort(byLength, (a, b) -> Integer.compare(messages[b].length,
+                                                     messages[a].length));
+        for (int lane = 0; lane < n; lane += 1) {
+            _message[lane] = byLength[lane];
+        }
+        MachineSpec first = n == 0 ? null : settings[0].spec();
+        _slots = n == 0 ? 0 : first.numRotors();
+        _size = n == 0 ? 0 : first.size();
+        int slots = _slots, size = _size, width = 2 * size;
+
+        _length = new int[n];
+        _positions = new int[slots * n];
+        _rotates = new int[slots * n];
+        _wireBase = new int[slots * n];
+        _notchBase = new int[slots * n];
+        _plugBase = new int[n];
+        _plug = new int[n * size];
+        HashMap<String, Integer> orders = new HashMap<String, Integer>();
+        ArrayList<MachineSpec> specs = new ArrayList<MachineSpec>();
+        int[] specOf = new int[n];
+        for (int lane = 0; lane < n; lane += 1) {
+            MachineSpec spec = settings[_message[lane]].spec();
+            if (spec.numRotors() != slots
+                || !spec.alphabet().toString()
+                    .equals(first.alphabet().toString())) {
+                throw EnigmaException.error("batch settings do not all "
+                                            + "fit one machine");
+            }
+            StringBuilder order = new StringBuilder();
+            for (int k = 0; k < slots; k += 1) {
+                order.append(spec.rotorName(k)).append(' ');
+            }
+            Integer s = orders.get(order.toString());
+            if (s == null) {
+                s = specs.size();
+                orders.put(order.toString(), s);
+                specs.add(spec);
+            }
+            specOf[lane] = s;
+        }
+        _forward = new int[specs.size() * slots * width];
+        _backward = new int[_forward.length];
+        _notch = new int[specs.size() * slots * size];
+        for (int s = 0; s < specs.size(); s += 1) {
+            MachineSpec spec = specs.get(s);
+            for (int k = 0; k < slots; k += 1) {
+                for (int j = 0; j < width; j += 1) {
+                    int w = (s * slots + k) * width + j;
+                    _forward[w] = spec.forward(k, 0, j % size);
+                    _backward[w] = spec.backward(k, 0, j % size);
+                }
+                for (int p = 0; p < size; p += 1) {
+                    _notch[(s * slots + k) * size + p] =
+                        spec.atNotch(k, p) ? 1 : 0;
+                }
+            }
+        }
+        for (int lane = 0; lane < n; lane += 1) {
+            CompiledSettings compiled = settings[_message[lane]];
+            MachineSpec spec = compiled.spec();
+            int s = specOf[lane];
+            int[] positions = compiled.positions();
+            for (int k = 0; k < slots; k += 1) {
+                int i = k * n + lane;
+                _positions[i] = positions[k];
+                _rotates[i] = spec.rotates(k) ? 1 : 0;
+                _wireBase[i] = (s * slots + k) * width;
+                _notchBase[i] = (s * slots + k) * size;
+            }
+            _plugBase[lane] = lane * size;
+            System.arraycopy(compiled.plugTable(), 0, _plug, lane * size,
+                             size);
+            _length[lane] = messages[_message[lane]].length;
+        }
+
+        int steps = n == 0 ? 0 : _length[0];
+        _active = new int[steps];
+        _rowStart = new int[steps + 1];
+        for (int t = 0, lane = n; t < steps; t += 1) {
+            while (_length[lane - 1] <= t) {
+                lane -= 1;
+            }
+            _active[t] = lane;
+            _rowStart[t + 1] = _rowStart[t] + lane;
+        }
+        _text = new int[_rowStart[steps]];
+        _out = new int[_text.length];
+        for (int lane = 0; lane < n; lane += 1) {
+            int[] message = messages[_message[lane]];
+            for (int t = 0; t < message.length; t += 1) {
+                _text[_rowStart[t] + lane] = message[t];
+            }
+        }
+    }
+
+    /** Convert time step T of lanes FROM through TO - 1, which must be
+     *  active, from text() into out(), stepping their rotors first. */
+    void convert(int t, int from, int to) {
+        int n = _lanes, size = _size, row = _rowStart[t];
+        int[] positions = _positions, rotates = _rotates;
+        int[] forward = _forward, backward = _backward;
+        for (int lane = from; lane < to; lane += 1) {
+            boolean stepThis = true;
+            for (int k = _slots - 1, i = k * n + lane; k >= 0; k -= 1,
+                     i -= n) {
+                int p = positions[i];
+                boolean pushLeft = k > 0 && rotates[i - n] != 0
+                    && _notch[_notchBase[i] + p] != 0;
+                if ((stepThis || pushLeft) && rotates[i] != 0) {
+                    positions[i] = p + 1 == size ? 0 : p + 1;
+                }
+                stepThis = pushLeft;
+            }
+            int plug = _plugBase[lane];
+            int c = _plug[plug + _text[row + lane]];
+            for (int k = _slots - 1, i = k * n + lane; k >= 0; k -= 1,
+                     i -= n) {
+                int p = positions[i];
+                c = forward[_wireBase[i] + c + p] - p;
+                c += (c >> (Integer.SIZE - 1)) & size;
+            }
+            for (int k = 1, i = n + lane; k < _slots; k += 1, i += n) {
+                int p = positions[i];
+                c = backward[_wireBase[i] + c + p] - p;
+                c += (c >> (Integer.SIZE - 1)) & size;
+            }
+            _out[row + lane] = _plug[plug + c];
+        }
+    }
+
+    /** Convert every time step of every lane by the scalar reference.
+     *  Each time step runs slot by slot across all the active lanes, so
+     *  that every lane's entries are read in order. */
+    void convertAll() {
+        int n = _lanes, size = _size;
+        int[] positions = _positions, rotates = _rotates, notches = _notch;
+        int[] forward = _forward, backward = _backward;
+        int[] carry = new int[n], c = new int[n];
+        for (int t = 0; t < _active.length; t += 1) {
+            int active = _active[t], row = _rowStart[t];
+            Arrays.fill(carry, 0, active, 1);
+            for (int k = _slots - 1; k >= 0; k -= 1) {
+                for (int lane = 0, i = k * n; lane < active; lane += 1,
+                         i += 1) {
+                    int p = positions[i];
+                    int push = k == 0 ? 0
+                        : rotates[i - n] & notches[_notchBase[i] + p];
+                    p += (carry[lane] | push) & rotates[i];
+                    positions[i] = p == size ? 0 : p;
+                    carry[lane] = push;
+                }
+            }
+            for (int lane = 0; lane < active; lane += 1) {
+                c[lane] = _plug[_plugBase[lane] + _text[row + lane]];
+            }
+            for (int k = _slots - 1; k >= 0; k -= 1) {
+                for (int lane = 0, i = k * n; lane < active; lane += 1,
+                         i += 1) {
+                    int p = positions[i];
+                    int x = forward[_wireBase[i] + c[lane] + p] - p;
+                    c[lane] = x + ((x >> (Integer.SIZE - 1)) & size);
+                }
+            }
+            for (int k = 1; k < _slots; k += 1) {
+                for (int lane = 0, i = k * n; lane < active; lane += 1,
+                         i += 1) {
+                    int p = positions[i];
+                    int x = backward[_wireBase[i] + c[lane] + p] - p;
+                    c[lane] = x + ((x >> (Integer.SIZE - 1)) & size);
+                }
+            }
+            for (int lane = 0; lane < active; lane += 1) {
+                _out[row + lane] = _plug[_plugBase[lane] + c[lane]];
+            }
+        }
+    }
+
+    /** Return the converted messages, as indices, in the order given. */
+    int[][] results() {
+        int[][] results = new int[_lanes][];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            int[] result = new int[_length[lane]];
+            for (int t = 0; t < result.length; t += 1) {
+                result[t] = _out[_rowStart[t] + lane];
+            }
+            results[_message[lane]] = result;
+        }
+        return results;
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the number of slots of every lane's machine. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the alphabet size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of time steps: the longest message's length. */
+    int steps() {
+        return _active.length;
+    }
+
+    /** Return the number of lanes still converting at time step T. */
+    int active(int t) {
+        return _active[t];
+    }
+
+    /** Return the index in text() and out() of lane 0 at time step T. */
+    int rowStart(int t) {
+        return _rowStart[t];
+    }
+
+    /** Return the input characters, by time step and then lane. */
+    int[] text() {
+        return _text;
+    }
+
+    /** Return the output characters, laid out as text(). */
+    int[] out() {
+        return _out;
+    }
+
+    /** Return the rotor settings, by slot K and lane L at K * lanes() +
+     *  L. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return 1 where the rotor is moving and 0 where not, laid out as
+     *  positions(). */
+    int[] rotates() {
+        return _rotates;
+    }
+
+    /** Return the offsets in forward() and backward() of each rotor's
+     *  wiring, laid out as positions(). */
+    int[] wireBase() {
+        return _wireBase;
+    }
+
+    /** Return the offsets in notches() of each rotor's notches, laid out
+     *  as positions(). */
+    int[] notchBase() {
+        return _notchBase;
+    }
+
+    /** Return the offset in plugboards() of each lane's plugboard. */
+    int[] plugBase() {
+        return _plugBase;
+    }
+
+    /** Return the forward wirings, each doubled as in MachineSpec, so that
+     *  a rotor at wireBase() B and setting P maps C to
+     *  forward()[B + C + P] - P, modulo size(). */
+    int[] forward() {
+        return _forward;
+    }
+
+    /** Return the inverse wirings, laid out as forward(). */
+    int[] backward() {
+        return _backward;
+    }
+
+    /** Return 1 at notchBase() B + P iff the rotor is at a notch at
+     *  setting P, and 0 otherwise. */
+    int[] notches() {
+        return _notch;
+    }
+
+    /** Return the plugboard tables of all lanes. */
+    int[] plugboards() {
+        return _plug;
+    }
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** Slots per machine. */
+    private final int _slots;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of the message in each lane. */
+    private final int[] _message;
+
+    /** Length of each lane's message; never increasing. */
+    private final int[] _length;
+
+    /** Lanes active at each time step. */
+    private final int[] _active;
+
+    /** Start of each time step in _text and _out, and their length. */
+    private final int[] _rowStart;
+
+    /** Input, by time step and lane. */
+    private final int[] _text;
+
+    /** Output, by time step and lane. */
+    private final int[] _out;
+
+    /** Rotor settings, by slot and lane. */
+    private final int[] _positions;
+
+    /** Whether each rotor moves, by slot and lane. */
+    private final int[] _rotates;
+
+    /** Offset of each rotor's wiring, by slot and lane. */
+    private final int[] _wireBase;
+
+    /** Offset of each rotor's notches, by slot and lane. */
+    private final int[] _notchBase;
+
+    /** Offset of each lane's plugboard in _plug. */
+    private final int[] _plugBase;
+
+    /** Plugboard tables, one per lane. */
+    private final int[] _plug;
+
+    /** Doubled forward wirings of every distinct rotor order and
+     *  slot. */
+    private final int[] _forward;
+
+    /** Doubled inverse wirings, laid out as _forward. */
+    private final int[] _backward;
+
+    /** Notch flags of every distinct rotor order and slot, by
+     *  setting. */
+    private final int[] _notch;
+
+}
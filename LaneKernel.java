@@ -0,0 +1,15 @@
+package enigma;
+
+/** A way of converting all the lanes of a LaneBatch.  Whatever it does,
+ *  a kernel must leave out() exactly as LaneBatch.convertAll would.
+ *  @author Jake Kim
+ */
+interface LaneKernel {
+
+    /** Convert every time step of every lane of BATCH. */
+    void convert(LaneBatch batch);
+
+    /** Return a short name for me, for reports. */
+    String name();
+
+}
@@ -0,0 +1,239 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Reads lines from a channel, decoding them straight into a reusable
+ *  character buffer rather than into Strings.  Lines end at "\n", "\r"
+ *  or "\r\n", as for Scanner.nextLine.  Lines may be read whole, by next,
+ *  or in parts of at most PART_SIZE characters, by nextPart, so that a
+ *  line of any length is read in bounded memory.
+ *  @author Jake Kim
+ */
+final class LineReader implements Closeable {
+
+    /** A reader of the lines in CHANNEL, which are encoded in CHARSET. */
+    LineReader(ReadableByteChannel channel, Charset charset) {
+        _channel = channel;
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _chars.flip();
+        _line = new char[INITIAL_LINE];
+    }
+
+    /** Read the next line, returning false if there is none. */
+    boolean next() {
+        _startsLine = true;
+        _length = 0;
+        return read(Integer.MAX_VALUE);
+    }
+
+    /** Read the next part of a line: the rest of the current line, if the
+     *  last part did not end it, and otherwise the start of the next line,
+     *  in either case up to PART_SIZE characters.  Return false if there
+     *  is no more input.  A part is empty only if its line is. */
+    boolean nextPart() {
+        _startsLine = _endsLine;
+        _length = 0;
+        return read(PART_SIZE) || !_startsLine;
+    }
+
+    /** Read the rest of the current line, if the last part did not end
+     *  it, onto the end of that part, so that the part holds everything
+     *  from there to the end of the line. */
+    void completeLine() {
+        if (!_endsLine) {
+            read(Integer.MAX_VALUE);
+        }
+    }
+
+    /** Return true iff the current line or part begins its line. */
+    boolean startsLine() {
+        return _startsLine;
+    }
+
+    /** Return true iff the current line or part ends its line. */
+    boolean endsLine() {
+        return _endsLine;
+    }
+
+    /** Add characters to the current line until the end of the line or
+     *  of input, or until it holds LIMIT characters.  Set _endsLine
+     *  according to which came first.  Return true iff any input was
+     *  read, not counting the "\n" of a "\r\n" whose "\r" ended the
+     *  last line. */
+    private boolean read(int limit) {
+        boolean any = false;
+        while (true) {
+            if (!_chars.hasRemaining() && !fill()) {
+                _endsLine = true;
+                return any;
+            }
+            char[] chars = _chars.array();
+            int start = _chars.position(), end = _chars.limit();
+            if (_skipNewline) {
+                _skipNewline = false;
+                if (chars[start] == '\n') {
+                    _chars.position(++start);
+                    continue;
+                }
+            }
+            any = true;
+            int i = start, stop = end;
+            if (end - start > limit - _length) {
+                stop = start + limit - _length;
+            }
+            while (i < stop && chars[i] != '\n' && chars[i] != '\r') {
+                i++;
+            }
+            append(chars, start, i - start);
+            if (i < end && (chars[i] == '\n' || chars[i] == '\r')) {
+                _skipNewline = chars[i] == '\r';
+                _chars.position(i + 1);
+                _endsLine = true;
+                return true;
+            }
+            _chars.position(i);
+            if (_length == limit) {
+                _endsLine = false;
+                return true;
+            }
+        }
+    }
+
+    /** Add the LEN characters of CHARS at OFF to the current line. */
+    private void append(char[] chars, int off, int len) {
+        if (_length + len > _line.length) {
+            _line = Arrays.copyOf(_line,
+                                  Math.max(_length + len, 2 * _line.length));
+        }
+        System.arraycopy(chars, off, _line, _length, len);
+        _length += len;
+    }
+
+    /** Decode more characters into _chars.  Return false at end of input
+     *  when nothing more was decoded. */
+    private boolean fill() {
+        _chars.clear();
+        try {
+            while (_chars.position() == 0 && !_done) {
+                if (_channel.read(_bytes) < 0) {
+                    _done = true;
+                }
+                _bytes.flip();
+                CoderResult result = _decoder.decode(_bytes, _chars, _done);
+                if (_done) {
+                    _decoder.flush(_chars);
+                }
+                _bytes.compact();
+                if (result.isError()) {
+                    result.throwException();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        _chars.flip();
+        return _chars.hasRemaining();
+    }
+
+    /** Return true iff more input is already decoded, so that next() will
+     *  not wait on the channel before returning a line or part of one. */
+    boolean ready() {
+        return _chars.hasRemaining();
+    }
+
+    /** Return the buffer holding the current line in its first length()
+     *  characters.  The caller may overwrite them. */
+    char[] buffer() {
+        return _line;
+    }
+
+    /** Return the buffer holding the current line or part, as buffer()
+     *  does, and read on into BUFFER in its place, so that a consumer may
+     *  keep the line while I read the next without copying it.  BUFFER
+     *  may be of any length. */
+    char[] exchange(char[] buffer) {
+        char[] line = _line;
+        _line = buffer.length > 0 ? buffer : new char[INITIAL_LINE];
+        return line;
+    }
+
+    /** Return the length of the current line. */
+    int length() {
+        return _length;
+    }
+
+    /** Return true iff the current line starts with CH. */
+    boolean startsWith(char ch) {
+        return _length > 0 && _line[0] == ch;
+    }
+
+    /** Return the current line as a String. */
+    String line() {
+        return new String(_line, 0, _length);
+    }
+
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close input: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of the byte and character buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Most characters in one part of a line. */
+    static final int PART_SIZE = 1 << 16;
+
+    /** Initial capacity of the line buffer. */
+    private static final int INITIAL_LINE = 1 << 10;
+
+    /** Source of bytes. */
+    private final ReadableByteChannel _channel;
+
+    /** Decoder from _channel's bytes to characters. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes read but not yet decoded. */
+    private final ByteBuffer _bytes;
+
+    /** Characters decoded but not yet returned, in read mode. */
+    private final CharBuffer _chars;
+
+    /** The current line, in its first _length characters. */
+    private char[] _line;
+
+    /** Length of the current line. */
+    private int _length;
+
+    /** True if the last line ended with "\r", so a "\n" next is part of
+     *  that line ending. */
+    private boolean _skipNewline;
+
+    /** True once _channel is exhausted. */
+    private boolean _done;
+
+    /** True iff the current line or part begins its line. */
+    private boolean _startsLine = true;
+
+    /** True iff the current line or part ends its line. */
+    private boolean _endsLine = true;
+
+}
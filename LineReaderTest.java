@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Jake Kim
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a reader of TEXT that reads it all at once if not TRICKLE,
+     *  and otherwise one byte per read, so that every character comes in
+     *  a fill of its own. */
+    private LineReader reader(String text, boolean trickle) {
+        final ByteBuffer bytes =
+            ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        if (!trickle) {
+            return new LineReader(Channels.newChannel(
+                new ByteArrayInputStream(bytes.array())),
+                StandardCharsets.US_ASCII);
+        }
+        ReadableByteChannel channel = new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) {
+                if (!bytes.hasRemaining()) {
+                    return -1;
+                }
+                dst.put(bytes.get());
+                return 1;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new LineReader(channel, StandardCharsets.US_ASCII);
+    }
+
+    /** Return the lines of TEXT, as read by next, either way. */
+    private List<String> lines(String text, boolean trickle) {
+        LineReader in = reader(text, trickle);
+        ArrayList<String> result = new ArrayList<String>();
+        while (in.next()) {
+            result.add(in.line());
+        }
+        return result;
+    }
+
+    /** Check that TEXT reads as the lines EXPECTED, either way. */
+    private void checkLines(String text, String... expected) {
+        for (boolean trickle : new boolean[] { false, true }) {
+            assertEquals(Arrays.asList(expected), lines(text, trickle));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkLineEndings() {
+        checkLines("A\rB\nC\r\nD\n", "A", "B", "C", "D");
+        checkLines("A\r\rB\n\nC\r\n\r\n", "A", "", "B", "", "C", "");
+        checkLines("");
+    }
+
+    @Test
+    public void checkEndOfInput() {
+        checkLines("AB", "AB");
+        checkLines("AB\n", "AB");
+        checkLines("AB\r", "AB");
+        checkLines("AB\r\n", "AB");
+        checkLines("AB\r\nCD", "AB", "CD");
+        checkLines("\r\n", "");
+    }
+
+    @Test
+    public void checkCrlfAcrossFill() {
+        char[] filler = new char[LineReader.BUFFER_SIZE - 1];
+        Arrays.fill(filler, 'X');
+        String first = new String(filler);
+        checkLines(first + "\r\nY\r\n", first, "Y");
+        checkLines(first + "Z\r\nY\r\n", first + "Z", "Y");
+    }
+
+    @Test
+    public void checkParts() {
+        char[] filler = new char[LineReader.PART_SIZE + 3];
+        Arrays.fill(filler, 'X');
+        for (boolean trickle : new boolean[] { false, true }) {
+            LineReader in = reader(new String(filler) + "\r\n\r\nAB", trickle);
+            assertTrue(in.nextPart());
+            assertTrue(in.startsLine());
+            assertFalse(in.endsLine());
+            assertEquals(LineReader.PART_SIZE, in.length());
+            assertTrue(in.nextPart());
+            assertFalse(in.startsLine());
+            assertTrue(in.endsLine());
+            assertEquals(3, in.length());
+            assertTrue(in.nextPart());
+            assertTrue(in.startsLine() && in.endsLine());
+            assertEquals(0, in.length());
+            assertTrue(in.nextPart());
+            assertEquals("AB", in.line());
+            assertFalse(in.nextPart());
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Collection;
 import java.util.ArrayList;
 
@@ -14,10 +16,18 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorRegistry(allRotors));
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  in REGISTRY. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorRegistry registry) {
         _alphabet = alpha;
         this._numRotors = numRotors;
         this._pawls = pawls;
-        this._allRotors = allRotors;
+        this._registry = registry;
+        this._lastUse = new int[registry.size()];
     }
 
     /** Return the number of rotor slots I have. */
@@ -30,6 +40,22 @@ class Machine {
         return this._pawls;
     }
 
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return this._alphabet;
+    }
+
+    /** Return the compiled, immutable form of my current rotor slots. */
+    MachineSpec spec() {
+        return this._spec;
+    }
+
+    /** Return my current rotor settings and plugboard.  The state is
+     *  shared with me, not copied. */
+    MachineState state() {
+        return this._state;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting.
@@ -38,125 +64,270 @@ class Machine {
      */
 
     void insertRotors(String[] rotors, int movable) {
-        this._usedRotors = new ArrayList<Rotor>();
-        for (int i = 0; i < rotors.length; i++) {
-            for (Rotor r : _allRotors) {
-                if (r.name().toUpperCase().equals(rotors[i].toUpperCase())) {
-                    this._usedRotors.add(r);
-                }
-            }
+        if (rotors.length != numRotors()) {
+            throw error("%d rotors named for %d slots", rotors.length,
+                        numRotors());
         }
+        ArrayList<Rotor> used = new ArrayList<Rotor>(rotors.length);
+        int generation = ++this._generation;
         int numofmove = 0;
-        for (Rotor r : _usedRotors) {
+        for (String name : rotors) {
+            int i = this._registry.find(name);
+            if (i < 0) {
+                throw error("misnamed rotor %s", name);
+            }
+            if (this._lastUse[i] == generation) {
+                throw error("rotor %s used twice", name);
+            }
+            this._lastUse[i] = generation;
+            Rotor r = this._registry.get(i);
             if (r.rotates()) {
                 numofmove++;
             }
+            used.add(r);
         }
         if (numofmove != movable) {
             throw new EnigmaException("not correct number of rotors");
         }
-        for (Rotor r : _usedRotors) {
-            if (r == null) {
-                throw new EnigmaException("misnamed rotor");
-            }
+        this._spec = new MachineSpec(used);
+        this._state = this._spec.newState();
+        if (this._plugboard != null) {
+            this._state.setPlugboard(this._plugboard);
         }
+        this._origin = new int[numRotors()];
+        this._orbit = null;
+    }
 
-        for (int i = 0; i < _usedRotors.size(); i++) {
-            for (int j = i + 1; j < _usedRotors.size(); j++) {
-                if (_usedRotors.get(i).name()
-                        == _usedRotors.get(i + 1).name()) {
-                    throw new EnigmaException("no duplicates");
-                }
+    /** Set my rotors according to SETTING, which must be a string of
+     *  numRotors()-1 characters in my alphabet. The first letter refers
+     *  to the leftmost rotor setting (not counting the reflector).  */
+    void setRotors(String setting) {
+        if (setting.length() < numRotors() - 1) {
+            throw error("setting %s is too short", setting);
+        }
+        for (int i = 1; i < numRotors(); i++) {
+            int posn = _alphabet.toInt(setting.charAt(i - 1));
+            if (posn < 0) {
+                throw error("setting %s is not in the alphabet", setting);
             }
+            this._state.setPosition(i, posn);
         }
+        this._state.setOffset(0);
+        this._state.savePositions(this._origin, 0);
+        useKeystream();
+        this._orbit = null;
+    }
 
-        if (this._usedRotors.size() != numRotors()) {
-            int dif = numRotors() - _usedRotors.size();
-            throw new EnigmaException(dif
-                    + " " + "rotors are not from configuration");
+    /** Return my current rotors, rotor settings and plugboard in compiled
+     *  form, to be installed later by install. */
+    CompiledSettings compile() {
+        if (this._spec == null) {
+            throw error("no rotors inserted");
         }
+        MachineState state = this._state.copy();
+        int[] positions = new int[numRotors()];
+        state.savePositions(positions, 0);
+        return new CompiledSettings(this._spec, positions, this._plugboard,
+                                    state.plugboard());
     }
 
-    /** Set my rotors according to SETTING, which must be a string of
-     *  numRotors()-1 characters in my alphabet. The first letter refers
-     *  to the leftmost rotor setting (not counting the reflector).  */
-    void setRotors(String setting) {
-        for (int i = 1; i < this._usedRotors.size(); i++) {
-            this._usedRotors.get(i).set(setting.charAt(i - 1));
+    /** Set my rotors, rotor settings and plugboard to SETTINGS, as though
+     *  the calls to insertRotors, setRotors and setPlugboard that compiled
+     *  them had been made again, but without reading or checking
+     *  anything. */
+    void install(CompiledSettings settings) {
+        this._spec = settings.spec();
+        this._state = this._spec.newState();
+        this._state.loadPositions(settings.positions(), 0);
+        this._state.setPlugboard(settings.plugTable());
+        this._plugboard = settings.plugboard();
+        this._origin = settings.positions().clone();
+        useKeystream();
+        this._orbit = null;
+    }
+
+    /** Have my state use the keystream table for its current rotor
+     *  settings, if I have been given a source of them. */
+    private void useKeystream() {
+        if (this._keystreams != null) {
+            this._state.useTable(this._keystreams.table(this._spec,
+                                                        this._origin));
         }
     }
 
+    /** Step and convert, after each setRotors, by the keystream table of
+     *  my rotor order from KEYSTREAMS, when there is one; or never, if
+     *  KEYSTREAMS is null. */
+    void useKeystreams(KeystreamCache keystreams) {
+        this._keystreams = keystreams;
+    }
+
+    /** Return the number of characters converted since my rotors were
+     *  last set. */
+    long offset() {
+        return this._state.offset();
+    }
+
+    /** Set my rotors to the settings they would reach after converting
+     *  OFFSET characters from the setting they were last given by
+     *  setRotors (or insertRotors), without converting anything.  After
+     *  working out, once, when each rotor moves over one period of the
+     *  rotors to its right, this takes time logarithmic in that period
+     *  for any OFFSET.  For rotors with so many notches that this would
+     *  keep more than RotorOrbit.MAX_MOVES moves, it takes one step per
+     *  keypress between the current offset and OFFSET, or from the start
+     *  if OFFSET is behind the current one. */
+    void seek(long offset) {
+        orbit().seek(this._state, offset);
+    }
+
+    /** Advance my rotors as though N more characters had been converted. */
+    void advance(long n) {
+        seek(offset() + n);
+    }
+
+    /** Return the orbit of my rotor settings from their last setting,
+     *  working it out on first use.  Threads sharing me may call this at
+     *  once, as long as none of them changes my settings. */
+    synchronized RotorOrbit orbit() {
+        if (this._orbit == null) {
+            MachineState start = this._state.copy();
+            start.loadPositions(this._origin, 0);
+            this._orbit = new RotorOrbit(start);
+        }
+        return this._orbit;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         this._plugboard = plugboard;
+        if (this._state != null) {
+            this._state.setPlugboard(plugboard);
+        }
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean [] checkBefore = new boolean [this._usedRotors.size()];
-        checkBefore[this._usedRotors.size() - 1] = true;
-        for (int k = this._usedRotors.size() - 2; k >= 0; k--) {
-            if (this._usedRotors.get(k + 1).atNotch()
-                    && this._usedRotors.get(k).rotates()) {
-                checkBefore[k] = true;
-                checkBefore[k + 1] = true;
-            }
-        }
-        for (int i = 0; i < checkBefore.length; i++) {
-            if (checkBefore[i]) {
-                this._usedRotors.get(i).advance();
-            }
-        }
+        return this._state.convert(c);
+    }
 
-        int convertOut = this._plugboard.permute(c);
+    /** Returns the encoding/decoding of MSG, updating the state of
+     *  the rotors accordingly.  Whitespace in MSG is dropped. */
+    String convert(String msg) {
+        char[] buffer = msg.toCharArray();
+        int n = convert(buffer, 0, buffer.length, buffer, 0);
+        return new String(buffer, 0, n);
+    }
 
-        for (int i = this._usedRotors.size() - 1; i >= 0; i -= 1) {
-            convertOut = this._usedRotors.get(i).convertForward(convertOut);
-        }
+    /** Convert the LEN characters of IN starting at OFF, skipping
+     *  whitespace, and store the results in OUT starting at OUTOFF.
+     *  Returns the number of characters stored.  IN and OUT may be the
+     *  same array provided OUTOFF <= OFF. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        return this._state.convert(in, off, len, out, outOff);
+    }
 
-        for (int i = 1; i < this._usedRotors.size(); i++) {
-            convertOut = this._usedRotors.get(i).convertBackward(convertOut);
+    /** Convert the characters remaining in IN, skipping whitespace, and put
+     *  the results into OUT, stopping early if OUT fills up.  Returns the
+     *  number of characters put. */
+    int convert(CharBuffer in, CharBuffer out) {
+        MachineState state = this._state;
+        int n = 0;
+        while (in.hasRemaining()) {
+            char ch = in.get(in.position());
+            if (!Character.isWhitespace(ch)) {
+                if (!out.hasRemaining()) {
+                    break;
+                }
+                out.put(_alphabet.toChar(state.convert(index(ch))));
+                n++;
+            }
+            in.position(in.position() + 1);
         }
-
-        convertOut = this._plugboard.permute((convertOut));
-        return convertOut;
+        state.flushCounts();
+        return n;
     }
 
-    /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
-    String convert(String msg) {
-        String copyMsg = msg;
-        copyMsg = copyMsg.replaceAll(" ", "");
-        String [] copyArray = copyMsg.split("");
-        int [] copyArrayIndex = new int [copyArray.length];
-        for (int i = 0; i < copyArrayIndex.length; i++) {
-            copyArrayIndex[i] = _alphabet.toInt(copyArray[i].charAt(0));
+    /** Convert the bytes remaining in IN, read as ISO-8859-1 characters,
+     *  skipping whitespace, and put the results into OUT, stopping early if
+     *  OUT fills up.  Returns the number of bytes put. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        MachineState state = this._state;
+        int n = 0;
+        while (in.hasRemaining()) {
+            char ch = (char) (in.get(in.position()) & BYTE_MASK);
+            if (!Character.isWhitespace(ch)) {
+                if (!out.hasRemaining()) {
+                    break;
+                }
+                char result = _alphabet.toChar(state.convert(index(ch)));
+                if (result > BYTE_MASK) {
+                    throw error("character %c does not fit in a byte",
+                                result);
+                }
+                out.put((byte) result);
+                n++;
+            }
+            in.position(in.position() + 1);
         }
-        char [] finalArray = new char [copyArray.length];
-        for (int i = 0; i < copyArray.length; i++) {
-            copyArrayIndex[i] = this.convert(copyArrayIndex[i]);
-            finalArray[i] = _alphabet.toChar(copyArrayIndex[i]);
+        state.flushCounts();
+        return n;
+    }
+
+    /** Convert every byte remaining in IN as the index of a character of
+     *  my alphabet, which must be the byte alphabet, and put the results
+     *  into OUT, which must have room for them.  Nothing is skipped, so
+     *  arbitrary binary data converts to data of the same length.  OUT may
+     *  be a duplicate of IN, to convert in place.  Returns the number of
+     *  bytes converted. */
+    int convertBytes(ByteBuffer in, ByteBuffer out) {
+        if (!_alphabet.isBytes()) {
+            throw error("only the byte alphabet converts bytes");
         }
-        String out = "";
-        for (int i = 0; i < finalArray.length; i++) {
-            out += Character.toString(finalArray[i]);
+        int n = in.remaining();
+        if (out.remaining() < n) {
+            throw error("no room for %d converted bytes", n);
         }
-        return out;
+        _state.convert(in, in.position(), out, out.position(), n);
+        in.position(in.position() + n);
+        out.position(out.position() + n);
+        return n;
     }
 
+    /** Return the index of CH in my alphabet, which must contain it. */
+    private int index(char ch) {
+        return MachineState.index(this._alphabet, ch);
+    }
+
+    /** Mask selecting the low eight bits of a byte or character. */
+    private static final int BYTE_MASK = 0xFF;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
     /** number of rotors. */
     private int _numRotors;
     /** number of pawls. */
     private int _pawls;
-    /** collection of all rotors possible. */
-    private Collection<Rotor> _allRotors;
+    /** Index of all rotors possible. */
+    private final RotorRegistry _registry;
+    /** Value of _generation when each registered rotor was last inserted,
+     *  to catch a rotor named twice in one insertRotors. */
+    private final int[] _lastUse;
+    /** Count of calls to insertRotors. */
+    private int _generation;
     /** permutation that is used. */
     private Permutation _plugboard;
-    /** ArrayList of all the used rotors. */
-    private ArrayList<Rotor> _usedRotors;
+    /** Compiled form of the inserted rotors. */
+    private MachineSpec _spec;
+    /** Rotor settings and plugboard over _spec. */
+    private MachineState _state;
+    /** Rotor settings as of the last setRotors, by slot. */
+    private int[] _origin;
+    /** Orbit of the rotor settings from _origin, built on first use. */
+    private RotorOrbit _orbit;
+    /** Source of keystream tables, or null. */
+    private KeystreamCache _keystreams;
 
 }
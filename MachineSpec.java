@@ -0,0 +1,227 @@
+package enigma;
+
+import java.util.List;
+
+/** The immutable, compiled form of a machine's rotor slots: the alphabet,
+ *  each slot's rotor wiring in both directions, notches and pawls.  Rotor
+ *  wirings are stored twice over in one array per direction, so that an
+ *  input index plus a rotor position never needs reducing modulo the
+ *  alphabet size, and notches are kept as bit masks.  A spec holds no
+ *  rotor settings; those live in a MachineState, and any number of states
+ *  on any number of threads may share one spec.
+ *  @author Jake Kim
+ */
+final class MachineSpec {
+
+    /** A spec whose slots hold ROTORS, ROTORS[0] being the reflector. */
+    MachineSpec(List<Rotor> rotors) {
+        _slots = rotors.size();
+        _alphabet = rotors.get(0).alphabet();
+        _size = _alphabet.size();
+        _width = 2 * _size;
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+        _names = new String[_slots];
+        _forward = new int[_slots * _width];
+        _backward = new int[_slots * _width];
+        _notches = new long[_slots * _words];
+        _rotates = new boolean[_slots];
+        _identity = new int[_size];
+        for (int k = 0; k < _slots; k++) {
+            Rotor rotor = rotors.get(k);
+            Permutation perm = rotor.permutation();
+            _names[k] = rotor.name();
+            for (int j = 0; j < _width; j++) {
+                _forward[k * _width + j] = perm.permute(j);
+                _backward[k * _width + j] = perm.invert(j);
+            }
+            _rotates[k] = rotor.rotates();
+            if (rotor instanceof MovingRotor) {
+                MovingRotor moving = (MovingRotor) rotor;
+                for (int p = 0; p < _size; p++) {
+                    if (moving.atNotch(p)) {
+                        _notches[k * _words + (p >>> LOG_WORD)] |= 1L << p;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < _size; c++) {
+            _identity[c] = c;
+        }
+        int first = 0;
+        while (first < _slots && !_rotates[first]) {
+            first++;
+        }
+        _firstMoving = first;
+    }
+
+    /** Return a new state for me, with every rotor at its 0 setting and no
+     *  plugboard. */
+    MachineState newState() {
+        return new MachineState(this);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of slots. */
+    int numRotors() {
+        return _slots;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the name of the rotor in slot K. */
+    String rotorName(int k) {
+        return _names[k];
+    }
+
+    /** Return true iff the rotor in slot K has a pawl. */
+    boolean rotates(int k) {
+        return _rotates[k];
+    }
+
+    /** Return the identity plugboard table, which must not be modified. */
+    int[] identity() {
+        return _identity;
+    }
+
+    /** Return true iff the rotor in slot K is at one of its notches when at
+     *  setting POSN. */
+    boolean atNotch(int k, int posn) {
+        return (_notches[k * _words + (posn >>> LOG_WORD)] & (1L << posn))
+            != 0;
+    }
+
+    /** Advance the rotor settings POSITIONS one keypress, exactly as the
+     *  pawls of an enigma machine do: the rightmost rotor always moves, and
+     *  a rotor at a notch moves together with the rotor to its left
+     *  whenever that one can rotate (which gives the double step of the
+     *  middle rotors). */
+    void step(int[] positions) {
+        boolean stepThis = true;
+        for (int k = _slots - 1; k >= _firstMoving; k--) {
+            boolean pushLeft =
+                k > 0 && _rotates[k - 1] && atNotch(k, positions[k]);
+            if ((stepThis || pushLeft) && _rotates[k]) {
+                int p = positions[k] + 1;
+                positions[k] = p == _size ? 0 : p;
+            }
+            stepThis = pushLeft;
+        }
+    }
+
+    /** Advance POSITIONS as step does, counting each rotor advance and
+     *  double step in TALLY. */
+    void step(int[] positions, Metrics.Tally tally) {
+        boolean stepThis = true;
+        for (int k = _slots - 1; k >= _firstMoving; k--) {
+            boolean pushLeft =
+                k > 0 && _rotates[k - 1] && atNotch(k, positions[k]);
+            if ((stepThis || pushLeft) && _rotates[k]) {
+                int p = positions[k] + 1;
+                positions[k] = p == _size ? 0 : p;
+                tally.advance(!stepThis);
+            }
+            stepThis = pushLeft;
+        }
+    }
+
+    /** Return the result of converting index C with the rotors at settings
+     *  POSITIONS and plugboard table PLUGBOARD, without stepping. */
+    int convert(int[] positions, int[] plugboard, int c) {
+        int size = _size, width = _width;
+        c = plugboard[c];
+        for (int k = _slots - 1; k >= 0; k--) {
+            int p = positions[k];
+            c = _forward[k * width + c + p] - p;
+            c += (c >> (Integer.SIZE - 1)) & size;
+        }
+        for (int k = 1; k < _slots; k++) {
+            int p = positions[k];
+            c = _backward[k * width + c + p] - p;
+            c += (c >> (Integer.SIZE - 1)) & size;
+        }
+        return plugboard[c];
+    }
+
+    /** Return the result of passing index C leftward through the rotors
+     *  in slots N - 1 down to 0 at settings POSITIONS, and back out through
+     *  slots 1 to N - 1.  With N = numRotors() this is the machine's
+     *  scrambler, without the plugboard; with N < numRotors() it is the
+     *  part of the scrambler to the left of slot N, which is also an
+     *  involution. */
+    int reflect(int[] positions, int n, int c) {
+        int size = _size, width = _width;
+        for (int k = n - 1; k >= 0; k--) {
+            int p = positions[k];
+            c = _forward[k * width + c + p] - p;
+            c += (c >> (Integer.SIZE - 1)) & size;
+        }
+        for (int k = 1; k < n; k++) {
+            int p = positions[k];
+            c = _backward[k * width + c + p] - p;
+            c += (c >> (Integer.SIZE - 1)) & size;
+        }
+        return c;
+    }
+
+    /** Return the result of passing index C leftward through the rotor in
+     *  slot K at setting POSN. */
+    int forward(int k, int posn, int c) {
+        c = _forward[k * _width + c + posn] - posn;
+        return c + ((c >> (Integer.SIZE - 1)) & _size);
+    }
+
+    /** Return the result of passing index C rightward through the rotor
+     *  in slot K at setting POSN. */
+    int backward(int k, int posn, int c) {
+        c = _backward[k * _width + c + posn] - posn;
+        return c + ((c >> (Integer.SIZE - 1)) & _size);
+    }
+
+    /** Log base 2 of the number of bits in a notch mask word. */
+    private static final int LOG_WORD = 6;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Length of one rotor's stretch of _forward and _backward. */
+    private final int _width;
+
+    /** Number of longs in one rotor's notch mask. */
+    private final int _words;
+
+    /** Rotor names, by slot. */
+    private final String[] _names;
+
+    /** Forward wirings: slot K maps J to _forward[K * _width + J], for
+     *  0 <= J < 2 * size(). */
+    private final int[] _forward;
+
+    /** Inverse wirings, laid out as _forward. */
+    private final int[] _backward;
+
+    /** Notch bit masks, _words longs per slot. */
+    private final long[] _notches;
+
+    /** Whether the rotor in each slot has a pawl. */
+    private final boolean[] _rotates;
+
+    /** Leftmost slot whose rotor rotates; nothing to its left moves. */
+    private final int _firstMoving;
+
+    /** The identity plugboard table. */
+    private final int[] _identity;
+
+}
@@ -0,0 +1,286 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The settings of one machine session over a shared MachineSpec: its rotor
+ *  positions, a reference to its plugboard table and a count of converted
+ *  characters.  A state is cheap to create and to copy, and is meant to be
+ *  used by one thread at a time; converting a character allocates nothing
+ *  and makes no virtual calls.
+ *
+ *  A state may be given the KeystreamTable of its rotor order, after which
+ *  it keeps its rotor settings as their number in the table, stepping and
+ *  converting by lookups alone; the settings themselves are worked out
+ *  again only when asked for.
+ *  @author Jake Kim
+ */
+final class MachineState {
+
+    /** A state over SPEC with every rotor at its 0 setting and no
+     *  plugboard. */
+    MachineState(MachineSpec spec) {
+        _spec = spec;
+        _positions = new int[spec.numRotors()];
+        _plugboard = spec.identity();
+        _tally = Metrics.tally();
+        _scratch = _tally == null ? null : new int[_positions.length];
+    }
+
+    /** A copy of OTHER. */
+    private MachineState(MachineState other) {
+        _spec = other._spec;
+        _positions = other._positions.clone();
+        _plugboard = other._plugboard;
+        _offset = other._offset;
+        _table = other._table;
+        _tableState = other._tableState;
+        _tally = Metrics.tally();
+        _scratch = _tally == null ? null : new int[_positions.length];
+    }
+
+    /** Return an independent copy of me. */
+    MachineState copy() {
+        return new MachineState(this);
+    }
+
+    /** Return my spec. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the number of slots. */
+    int numRotors() {
+        return _positions.length;
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int position(int k) {
+        syncPositions();
+        return _positions[k];
+    }
+
+    /** Set the rotor in slot K to setting POSN. */
+    void setPosition(int k, int posn) {
+        syncPositions();
+        _positions[k] = posn;
+        syncTable();
+    }
+
+    /** Store my rotor settings into DST, starting at OFF. */
+    void savePositions(int[] dst, int off) {
+        syncPositions();
+        System.arraycopy(_positions, 0, dst, off, _positions.length);
+    }
+
+    /** Set my rotor settings from SRC, starting at OFF. */
+    void loadPositions(int[] src, int off) {
+        System.arraycopy(src, off, _positions, 0, _positions.length);
+        syncTable();
+    }
+
+    /** Return true iff my rotors are set as those of OTHER. */
+    boolean samePositions(MachineState other) {
+        if (_table != null && _table == other._table) {
+            return _tableState == other._tableState;
+        }
+        syncPositions();
+        other.syncPositions();
+        return Arrays.equals(_positions, other._positions);
+    }
+
+    /** Step and convert by TABLE, the keystream table of my spec, from now
+     *  on, for as long as it covers my rotor settings; or, if TABLE is
+     *  null or does not cover them now, by rotor arithmetic. */
+    void useTable(KeystreamTable table) {
+        syncPositions();
+        _table = table != null && table.covers(_positions) ? table : null;
+        syncTable();
+    }
+
+    /** Return the keystream table I use, or null. */
+    KeystreamTable table() {
+        return _table;
+    }
+
+    /** Bring _positions up to date with _tableState, if I use a table. */
+    private void syncPositions() {
+        if (_table != null) {
+            _table.positions(_tableState, _positions);
+        }
+    }
+
+    /** Bring _tableState up to date with _positions, which have just been
+     *  set, ceasing to use my table if it does not cover them. */
+    private void syncTable() {
+        if (_table != null) {
+            if (_table.covers(_positions)) {
+                _tableState = _table.state(_positions);
+            } else {
+                _table = null;
+            }
+        }
+    }
+
+    /** Return the number of characters converted since my offset was
+     *  last set. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Set my count of converted characters to OFFSET. */
+    void setOffset(long offset) {
+        _offset = offset;
+    }
+
+    /** Make my plugboard PLUGBOARD, whose size must be my spec's. */
+    void setPlugboard(Permutation plugboard) {
+        int[] table = new int[_spec.size()];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = plugboard.permute(c);
+        }
+        _plugboard = table;
+    }
+
+    /** Make my plugboard the table PLUGBOARD, which is shared rather than
+     *  copied and so must not be modified afterwards. */
+    void setPlugboard(int[] plugboard) {
+        _plugboard = plugboard;
+    }
+
+    /** Return my plugboard table, which must not be modified. */
+    int[] plugboard() {
+        return _plugboard;
+    }
+
+    /** Return true iff the rotor in slot K is at one of its notches. */
+    boolean atNotch(int k) {
+        return _spec.atNotch(k, position(k));
+    }
+
+    /** Advance the rotors one keypress. */
+    void step() {
+        if (_table != null) {
+            _tableState = _table.next(_tableState);
+        } else {
+            _spec.step(_positions);
+        }
+    }
+
+    /** Return the result of converting index C without stepping first. */
+    int convertAtPosition(int c) {
+        if (_table != null) {
+            return _plugboard[_table.scramble(_tableState, _plugboard[c])];
+        }
+        return _spec.convert(_positions, _plugboard, c);
+    }
+
+    /** Return the result of converting index C, after first advancing the
+     *  rotors. */
+    int convert(int c) {
+        _offset++;
+        if (_tally != null) {
+            count();
+        }
+        KeystreamTable table = _table;
+        if (table != null) {
+            int s = table.next(_tableState);
+            _tableState = s;
+            return _plugboard[table.scramble(s, _plugboard[c])];
+        }
+        _spec.step(_positions);
+        return _spec.convert(_positions, _plugboard, c);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, skipping
+     *  whitespace, and store the results in OUT starting at OUTOFF.
+     *  Returns the number of characters stored.  IN and OUT may be the
+     *  same array provided OUTOFF <= OFF. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        Alphabet alphabet = _spec.alphabet();
+        int o = outOff;
+        for (int i = off, end = off + len; i < end; i++) {
+            char ch = in[i];
+            if (!Character.isWhitespace(ch)) {
+                out[o++] = alphabet.toChar(convert(index(alphabet, ch)));
+            }
+        }
+        flushCounts();
+        return o - outOff;
+    }
+
+    /** Convert the LEN bytes of IN starting at OFF, each the index of a
+     *  character of the byte alphabet, and store the results in OUT
+     *  starting at OUTOFF.  Every byte is converted; none is skipped.  IN
+     *  and OUT may share their contents provided OUTOFF <= OFF. */
+    void convert(ByteBuffer in, int off, ByteBuffer out, int outOff,
+                 int len) {
+        for (int i = 0; i < len; i++) {
+            out.put(outOff + i, (byte) convert(in.get(off + i) & BYTE_MASK));
+        }
+        flushCounts();
+    }
+
+    /** Add the counts of my conversions so far, if I count them, to the
+     *  totals in Metrics. */
+    void flushCounts() {
+        if (_tally != null) {
+            _tally.flush();
+        }
+    }
+
+    /** Count the keypress about to be made in _tally: one character and
+     *  the rotor advances it makes, worked out on a copy of my
+     *  settings. */
+    private void count() {
+        if (_table != null) {
+            _table.positions(_tableState, _scratch);
+        } else {
+            System.arraycopy(_positions, 0, _scratch, 0, _scratch.length);
+        }
+        _spec.step(_scratch, _tally);
+        _tally.character();
+    }
+
+    /** Return the index of CH in ALPHABET, which must contain it. */
+    static int index(Alphabet alphabet, char ch) {
+        int c = alphabet.toInt(ch);
+        if (c < 0) {
+            throw error("character %c is not in the alphabet", ch);
+        }
+        return c;
+    }
+
+    /** Mask selecting the low eight bits of a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** The spec I am a state of. */
+    private final MachineSpec _spec;
+
+    /** Current rotor settings, by slot; out of date while I use a
+     *  table. */
+    private final int[] _positions;
+
+    /** Keystream table I step and convert by, or null. */
+    private KeystreamTable _table;
+
+    /** Number of my rotor settings in _table. */
+    private int _tableState;
+
+    /** Plugboard table, shared and never modified. */
+    private int[] _plugboard;
+
+    /** Characters converted since the offset was last set. */
+    private long _offset;
+
+    /** My counts not yet added to the totals, or null if I do not count
+     *  (see Metrics). */
+    private final Metrics.Tally _tally;
+
+    /** Rotor settings on which to work out the advances to count, or null
+     *  if I do not count. */
+    private final int[] _scratch;
+
+}
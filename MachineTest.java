@@ -0,0 +1,382 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Jake Kim
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private Alphabet alpha = new Alphabet();
+
+    /** Return a machine holding the naval rotors, with the rotors named
+     *  by the first five words of SETTINGS inserted, the rotor setting
+     *  given by the sixth word, and plugboard CYCLES. */
+    private Machine makeMachine(String settings, String cycles) {
+        Machine machine = new Machine(alpha, 5, 3, navalRotors());
+        String[] words = settings.split(" ");
+        String[] names = new String[5];
+        System.arraycopy(words, 0, names, 0, 5);
+        machine.insertRotors(names, 3);
+        machine.setRotors(words[5]);
+        machine.setPlugboard(perm(cycles));
+        return machine;
+    }
+
+    /** Return naval rotors I, III and IV, thin rotor Beta and thin
+     *  reflector B. */
+    private ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new MovingRotor("I", perm("(AELTPHQXRU) (BKNW) (CMOY) "
+                                             + "(DFG) (IV) (JZ) (S)"), "Q"));
+        rotors.add(new MovingRotor("III", perm("(ABDHPEJT) "
+                                               + "(CFLVMZOYQIRWUKXSG) (N)"),
+                                   "V"));
+        rotors.add(new MovingRotor("IV", perm("(AEPLIYWCOXMRFZBSTGJQNH) "
+                                              + "(DV) (KU)"), "J"));
+        rotors.add(new FixedRotor("Beta", perm("(ALBEVFCYODJWUGNMQTZSKPR) "
+                                               + "(HIX)")));
+        rotors.add(new Reflector("B", perm("(AE) (BN) (CK) (DQ) (FU) (GY) "
+                                           + "(HW) (IJ) (LO) (MP) (RX) (SZ) "
+                                           + "(TV)")));
+        return rotors;
+    }
+
+    /** Return the permutation CYCLES of the upper-case alphabet. */
+    private Permutation perm(String cycles) {
+        return new Permutation(cycles, alpha);
+    }
+
+    /** The standard test setting. */
+    private static final String SETTING = "B Beta III IV I AXLE";
+
+    /** The standard test plugboard. */
+    private static final String PLUGS = "(HQ) (EX) (IP) (TR) (BY)";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConvertString() {
+        Machine machine = makeMachine(SETTING, PLUGS);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     machine.convert("FROM HIS SHOULDER HIAWATHA"));
+        machine = makeMachine(SETTING, PLUGS);
+        assertEquals("FROMHISSHOULDERHIAWATHA",
+                     machine.convert("QVPQS OKOIL PUBKJ ZPISF XDW"));
+    }
+
+    @Test
+    public void checkConvertIndexMatchesString() {
+        Machine bulk = makeMachine(SETTING, PLUGS);
+        Machine single = makeMachine(SETTING, PLUGS);
+        String msg = "TOOKTHECAMERAOFROSEWOODMADEOFSLIDINGFOLDINGROSEWOOD";
+        String result = bulk.convert(msg);
+        for (int i = 0; i < msg.length(); i += 1) {
+            int c = single.convert(alpha.toInt(msg.charAt(i)));
+            assertEquals(result.charAt(i), alpha.toChar(c));
+        }
+    }
+
+    @Test
+    public void checkConvertArrayInPlace() {
+        Machine machine = makeMachine(SETTING, PLUGS);
+        char[] buffer = "xxFROM HIS\tSHOULDER HIAWATHA".toCharArray();
+        int n = machine.convert(buffer, 2, buffer.length - 2, buffer, 0);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(buffer, 0, n));
+    }
+
+    @Test
+    public void checkConvertCharBuffer() {
+        Machine machine = makeMachine(SETTING, PLUGS);
+        CharBuffer in = CharBuffer.wrap("FROM HIS SHOULDER HIAWATHA");
+        CharBuffer out = CharBuffer.allocate(10);
+        assertEquals(10, machine.convert(in, out));
+        assertEquals("QVPQSOKOIL", out.flip().toString());
+        out.clear();
+        assertEquals(10, machine.convert(in, out));
+        out.clear();
+        assertEquals(3, machine.convert(in, out));
+        assertEquals("XDW", out.flip().toString());
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCharacterNotInAlphabet() {
+        makeMachine(SETTING, PLUGS).convert("HELLO, WORLD");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBareSettingsLine() {
+        Configuration config = new Configuration(alpha, 5, 3, navalRotors());
+        new MessageProcessor(config).setUp("*");
+    }
+
+    @Test
+    public void checkSeek() {
+        String msg = "TOOKTHECAMERAOFROSEWOODMADEOFSLIDINGFOLDINGROSEWOOD";
+        for (int n = 0; n < 40000; n += 3989) {
+            Machine stepped = makeMachine(SETTING, PLUGS);
+            for (int i = 0; i < n; i += 1) {
+                stepped.convert(0);
+            }
+            Machine sought = makeMachine(SETTING, PLUGS);
+            sought.seek(n);
+            assertEquals(n, sought.offset());
+            assertEquals(stepped.convert(msg), sought.convert(msg));
+        }
+    }
+
+    @Test
+    public void checkAdvance() {
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        Machine machine = makeMachine(SETTING, PLUGS);
+        String whole = machine.convert(msg);
+        machine = makeMachine(SETTING, PLUGS);
+        machine.advance(4);
+        machine.advance(6);
+        assertEquals(whole.substring(10), machine.convert(msg.substring(10)));
+        machine.seek(0);
+        assertEquals(whole, machine.convert(msg));
+    }
+
+    @Test
+    public void checkSeekDoubleSteps() {
+        Alphabet abc = new Alphabet("ABCDE");
+        Permutation ident = new Permutation("", abc);
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD)", abc)));
+        rotors.add(new MovingRotor("P", ident, "AE"));
+        rotors.add(new MovingRotor("Q", ident, "BC"));
+        rotors.add(new FixedRotor("F", ident));
+        rotors.add(new MovingRotor("S", ident, "D"));
+        rotors.add(new MovingRotor("T", ident, "CDE"));
+        String[] names = { "R", "P", "Q", "F", "S", "T" };
+        Machine stepped = new Machine(abc, 6, 4, rotors);
+        stepped.insertRotors(names, 4);
+        stepped.setRotors("EBACD");
+        Machine sought = new Machine(abc, 6, 4, rotors);
+        sought.insertRotors(names, 4);
+        sought.setRotors("EBACD");
+        for (int n = 0; n < 5000; n += 1) {
+            sought.seek(n % 3 == 0 ? n : 4999 - n);
+            sought.seek(n);
+            assertArrayEquals(stepped.compile().positions(),
+                              sought.compile().positions());
+            stepped.convert(0);
+        }
+    }
+
+    @Test
+    public void checkParallelConvert() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 5 * ParallelConverter.CHUNK; i += 1) {
+            msg.append(i % 7 == 0 ? ' ' : alpha.toChar(i * 31 % 26));
+        }
+        Machine serial = makeMachine(SETTING, PLUGS);
+        Machine parallel = makeMachine(SETTING, PLUGS);
+        ParallelConverter converter =
+            new ParallelConverter(parallel, new ForkJoinPool(4));
+        assertEquals(serial.convert(msg.toString()),
+                     converter.convert(msg.toString()));
+        assertEquals(serial.offset(), parallel.offset());
+        assertEquals(serial.convert("HELLOWORLD"),
+                     parallel.convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void checkStatesShareSpec() {
+        Machine machine = makeMachine(SETTING, PLUGS);
+        MachineSpec spec = machine.spec();
+        MachineState first = machine.state().copy();
+        MachineState second = spec.newState();
+        second.loadPositions(new int[] {0, 0, 23, 11, 4}, 0);
+        second.setPlugboard(first.plugboard());
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        char[] out = new char[msg.length()];
+        for (int i = 0; i < msg.length(); i += 1) {
+            int c = alpha.toInt(msg.charAt(i));
+            out[i] = alpha.toChar(first.convert(c));
+            second.convert(c);
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(out));
+        assertSame(spec, second.spec());
+        assertEquals(msg.length(), second.offset());
+    }
+
+    @Test
+    public void checkKeystreamTable() {
+        String msg = "TOOKTHECAMERAOFROSEWOODMADEOFSLIDINGFOLDINGROSEWOOD";
+        KeystreamCache cache = new KeystreamCache(1);
+        Machine plain = makeMachine(SETTING, PLUGS);
+        Machine tabled = makeMachine(SETTING, PLUGS);
+        tabled.useKeystreams(cache);
+        tabled.setRotors("AXLE");
+        assertNotNull(tabled.state().table());
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        for (int k = 0; k < 5; k += 1) {
+            assertEquals(plain.state().position(k),
+                         tabled.state().position(k));
+        }
+        plain.seek(12345);
+        tabled.seek(12345);
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        tabled.setRotors("BXLE");
+        assertNotNull(tabled.state().table());
+        assertEquals(1, cache.size());
+        assertEquals(makeMachine("B Beta III IV I BXLE", PLUGS).convert(msg),
+                     tabled.convert(msg));
+        tabled.state().setPosition(1, 0);
+        assertNull(tabled.state().table());
+    }
+
+    @Test
+    public void checkMetrics() {
+        Metrics.enable();
+        try {
+            Metrics totals = new Metrics(null);
+            Machine machine = makeMachine("B Beta III IV I AAIQ", "");
+            long chars = totals.getCharactersConverted();
+            long advances = totals.getRotorAdvances();
+            long doubles = totals.getDoubleSteps();
+            machine.convert("AA");
+            assertEquals(2, totals.getCharactersConverted() - chars);
+            assertEquals(5, totals.getRotorAdvances() - advances);
+            assertEquals(1, totals.getDoubleSteps() - doubles);
+            machine.useKeystreams(new KeystreamCache(1));
+            machine.setRotors("AAIQ");
+            machine.convert("AA");
+            assertEquals(10, totals.getRotorAdvances() - advances);
+            assertEquals(2, totals.getDoubleSteps() - doubles);
+        } finally {
+            Metrics.disable();
+        }
+    }
+
+    @Test
+    public void checkCompiledSettings() {
+        String msg = "TOOKTHECAMERAOFROSEWOODMADEOFSLIDINGFOLDINGROSEWOOD";
+        Machine machine = makeMachine(SETTING, PLUGS);
+        CompiledSettings compiled = machine.compile();
+        String first = machine.convert(msg);
+        Machine other = makeMachine("B Beta I IV III AAAA", "(AZ)");
+        other.convert(msg);
+        other.install(compiled);
+        assertSame(compiled.spec(), other.spec());
+        assertEquals(0, other.offset());
+        assertEquals(first, other.convert(msg));
+        other.seek(0);
+        assertEquals(first, other.convert(msg));
+
+        SettingsCache cache = new SettingsCache(1);
+        cache.put("* B Beta III IV I AXLE", compiled);
+        assertSame(compiled, cache.get("* B Beta III IV I AXLE  "));
+        assertNull(cache.get("* B Beta III IV I AXLF"));
+        cache.put("* B Beta III IV I AXLF", compiled);
+        assertNull(cache.get("* B Beta III IV I AXLE"));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void checkBatchConvert() {
+        String[] settings = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* B Beta I IV III QEVZ",
+            "* B Beta III IV I AXLE",
+            "* B Beta IV III I ADUZ (AZ)",
+            "* B Beta I III IV AAAA",
+        };
+        String[] messages = {
+            "FROM HIS SHOULDER HIAWATHA",
+            "TOOKTHECAMERAOFROSEWOODMADEOFSLIDINGFOLDINGROSEWOOD",
+            "",
+            "NEATLYPUTITALLTOGETHER",
+            "INITSCASEITLAYCOMPACTLY",
+        };
+        Configuration config = new Configuration(alpha, 5, 3, navalRotors());
+        MessageProcessor processor = new MessageProcessor(config);
+        String[] expected = new String[settings.length];
+        for (int i = 0; i < settings.length; i += 1) {
+            processor.setUp(settings[i]);
+            expected[i] = processor.machine().convert(messages[i]);
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", expected[0]);
+        LaneKernel byStep = new LaneKernel() {
+            @Override
+            public void convert(LaneBatch batch) {
+                for (int t = 0; t < batch.steps(); t += 1) {
+                    batch.convert(t, 0, batch.active(t));
+                }
+            }
+
+            @Override
+            public String name() {
+                return "by step";
+            }
+        };
+        for (LaneKernel kernel
+                 : new LaneKernel[] { BatchConverter.SCALAR, byStep }) {
+            assertArrayEquals(expected, new BatchConverter(config, kernel)
+                              .convert(settings, messages));
+        }
+    }
+
+    @Test
+    public void checkByteAlphabet() {
+        StringBuilder up = new StringBuilder(), down = new StringBuilder();
+        StringBuilder pairs = new StringBuilder();
+        for (int i = 0; i < Alphabet.BYTE_SYMBOLS; i += 1) {
+            up.append(String.format(" %02x", i));
+            down.insert(0, String.format(" %02x", i));
+            if (i % 2 == 0) {
+                pairs.append(String.format(" (%02x %02x)", i, i + 1));
+            }
+        }
+        String text = Alphabet.BYTE_ALPHABET + "\n3 2\n"
+            + "I M10 (" + up + ")\nII M2a (" + down + ")\nB R\n"
+            + pairs + "\n";
+        Configuration config = Configuration.parse(
+            new LineReader(Channels.newChannel(
+                new ByteArrayInputStream(text.getBytes())),
+                StandardCharsets.US_ASCII));
+        assertTrue(config.alphabet().isBytes());
+        String settings = "* B I II 0a20 (00 ff) (0a 0d)";
+        MessageProcessor processor = new MessageProcessor(config);
+        MessageProcessor reference = new MessageProcessor(config);
+        processor.setUp(settings);
+        reference.setUp(settings);
+        byte[] data = new byte[4 * Alphabet.BYTE_SYMBOLS];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i * 7);
+        }
+        ByteBuffer out = ByteBuffer.allocate(data.length);
+        assertEquals(data.length, processor.machine()
+                     .convertBytes(ByteBuffer.wrap(data), out));
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals((byte) reference.machine().convert(data[i] & 0xFF),
+                         out.get(i));
+        }
+        processor.setUp(settings);
+        out.flip();
+        processor.machine().convertBytes(out, out.duplicate());
+        assertArrayEquals(data, out.array());
+    }
+}
@@ -2,11 +2,24 @@ package enigma;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
 
@@ -23,7 +36,39 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  Options, which start with "--", may come
+     *  before or among the arguments:
+     *  --parallel[=N] processes the sections begun by each "*" settings
+     *  line concurrently on N threads (by default, one per processor).
+     *  --save-snapshot=FILE saves the parsed configuration to FILE as a
+     *  binary snapshot, which may then be given in place of ARGS[0].
+     *  --serve=ADDRESS, given with ARGS[0] alone, runs until killed as a
+     *  server (see Server) listening on ADDRESS, which is either a port on
+     *  the loopback interface or the path of a Unix domain socket.
+     *  --keystreams[=N] keeps the full keystream of up to N rotor orders
+     *  (by default, KEYSTREAM_TABLES) in tables, so that messages under a
+     *  rotor order already seen are converted by table lookups alone.
+     *  --settings-cache=N keeps up to N compiled settings lines (by
+     *  default, SETTINGS_CACHE), so that a settings line seen before
+     *  resets the machine without being read again.
+     *  --pipeline and --no-pipeline turn on and off reading, converting
+     *  and writing on three threads at once (see Pipeline), which is on by
+     *  default when there is more than one processor.
+     *  --batch[=N] converts many files under the one configuration on N
+     *  threads (by default, one per processor), each file as ARGS[1] is
+     *  otherwise, and reports the time taken by each and in all (see
+     *  BatchJob).  ARGS[1] is then either a directory, whose files are
+     *  converted into the files of the same names in directory ARGS[2], or
+     *  a manifest listing an input and an output file name on each
+     *  line.
+     *  --bytes=SETTINGS converts the binary file ARGS[1] into the file
+     *  ARGS[2] byte for byte, with every byte a character of the byte
+     *  alphabet (see ByteFileConverter), on a machine set up by the
+     *  settings line SETTINGS, whose symbols are written in hexadecimal.
+     *  ARGS[0] must then configure the byte alphabet.
+     *  --stats counts the characters converted, rotor advances, re-keys
+     *  and configuration loads (see Metrics), presents the counts over JMX
+     *  and prints them on the standard error when done. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,31 +81,122 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        args = parseOptions(args);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
-        _freshConfig = getInput(args[0]);
+        _configName = args[0];
+
+        if (_serveAddress != null) {
+            if (args.length > 1) {
+                throw error("--serve takes no input or output files");
+            }
+            return;
+        }
+
+        if (_batchThreads > 0) {
+            if (args.length < 2) {
+                throw error("--batch needs a directory or manifest");
+            }
+            _batchSource = args[1];
+            _batchOutput = args.length > 2 ? args[2] : null;
+            return;
+        }
+
+        if (_byteSettings != null) {
+            if (args.length != 3) {
+                throw error("--bytes needs an input and an output file");
+            }
+            _byteInput = args[1];
+            _byteOutput = args[2];
+            return;
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getLines(args[1]);
+            _inputIsFile = true;
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(Channels.newChannel(System.in),
+                                    Charset.defaultCharset());
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            try {
+                _output = getOutput(args[2]);
+            } catch (EnigmaException excp) {
+                closeFiles();
+                throw excp;
+            }
         } else {
             _output = System.out;
         }
+        _writer = new MessageWriter(new OutputStreamWriter(_output));
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Record the options in ARGS and return the remaining arguments. */
+    private String[] parseOptions(String[] args) {
+        ArrayList<String> rest = new ArrayList<String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                rest.add(arg);
+            } else if (arg.equals("--parallel")) {
+                _threads = Runtime.getRuntime().availableProcessors();
+            } else if (arg.startsWith("--parallel=")) {
+                _threads = parseCount(arg);
+            } else if (arg.equals("--batch")) {
+                _batchThreads = Runtime.getRuntime().availableProcessors();
+            } else if (arg.startsWith("--batch=")) {
+                _batchThreads = parseCount(arg);
+            } else if (arg.startsWith("--save-snapshot=")) {
+                _snapshotName = arg.substring(arg.indexOf('=') + 1);
+            } else if (arg.equals("--keystreams")) {
+                _keystreamTables = KEYSTREAM_TABLES;
+            } else if (arg.startsWith("--keystreams=")) {
+                _keystreamTables = parseCount(arg);
+            } else if (arg.startsWith("--bytes=")) {
+                _byteSettings = arg.substring(arg.indexOf('=') + 1).trim();
+                if (!_byteSettings.startsWith("*")) {
+                    _byteSettings = "* " + _byteSettings;
+                }
+            } else if (arg.equals("--stats")) {
+                _stats = true;
+                Metrics.enable();
+            } else if (arg.equals("--pipeline")) {
+                _pipeline = true;
+            } else if (arg.equals("--no-pipeline")) {
+                _pipeline = false;
+            } else if (arg.startsWith("--settings-cache=")) {
+                _settingsLines = parseCount(arg);
+            } else if (arg.startsWith("--serve=")) {
+                _serveAddress =
+                    Server.parseAddress(arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw error("unknown option %s", arg);
+            }
+        }
+        return rest.toArray(new String[rest.size()]);
+    }
+
+    /** Return the positive count after the '=' of option ARG. */
+    private int parseCount(String arg) {
         try {
-            return new Scanner(new File(name));
-        } catch (IOException excp) {
+            int n = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad count in option %s", arg);
+    }
+
+    /** Return a LineReader reading from the file named NAME. */
+    private LineReader getLines(String name) {
+        try {
+            return new LineReader(FileChannel.open(Paths.get(name)),
+                                  Charset.defaultCharset());
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
@@ -78,234 +214,304 @@ public final class Main {
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        int count = 1;
-        Machine finMec = addItToMachine();
-        String ms = "";
-        while (this._input.hasNextLine()) {
-            ms = this._input.nextLine();
-            if (ms.equals("")) {
-                printMessageLine(ms);
-            } else if (ms.substring(0, 1).equals("*")) {
-                count++;
-                String setString = ms;
-                String newinput  = setString.substring(2);
-                String [] nra = newinput.split(" ");
-                if (nra.length <= finMec.numRotors()) {
-                    throw new EnigmaException("Rotor numbers do not match");
-                }
-                checkRotorSetting(nra, finMec.numRotors(),
-                        finMec.numPawls(), newinput);
-                String [] newcopiedArray = new String [finMec.numRotors()];
-                System.arraycopy(nra, 0, newcopiedArray, 0, finMec.numRotors());
-                finMec.insertRotors(newcopiedArray, finMec.numPawls());
-                if (nra[finMec.numRotors()].substring(0, 1).equals("(")) {
-                    finMec.setRotors("AAAA");
-                } else {
-                    finMec.setRotors(nra[finMec.numRotors()]);
-                }
-                Permutation npbp;
-                if (setString.indexOf("(") != -1) {
-                    String npc = setString.substring(setString.indexOf("("));
-                    npbp = new Permutation(npc, this._alphabet);
-                } else {
-                    npbp = new Permutation("", this._alphabet);
-                }
-                finMec.setPlugboard(npbp);
+        if (_serveAddress != null) {
+            serve();
+            return;
+        }
+        try {
+            if (_batchThreads > 0) {
+                processBatch();
+            } else if (_byteSettings != null) {
+                processBytes();
+            } else if (_threads > 1) {
+                processParallel();
             } else {
-                printMessageLine(finMec.convert(ms));
+                processSerial();
+            }
+        } finally {
+            try {
+                if (_writer != null) {
+                    _writer.flush();
+                }
+            } finally {
+                closeFiles();
+            }
+            if (_stats && _configuration != null) {
+                System.err.print(new Metrics(_configuration.settingsCache()));
             }
-            count++;
         }
     }
 
-    /**
-     * Configure an Enigma machine from the contents of configuration
-     *      *  file _config and apply it to the messages in _input, sending the
-     *      *  results to _output.
-     * @return Final Machine
-     */
-    public Machine addItToMachine() {
-        Machine cm = readConfig(); String line1 = _input.nextLine();
-        if (line1.charAt(0) != '*') {
-            throw new EnigmaException("Bad input");
-        }
-        String lws = line1.substring(2);
-        String [] eachRotorArray = lws.split(" ");
-        if (eachRotorArray.length <=  cm.numRotors()) {
-            throw new EnigmaException("Rotor numbers do not match");
-        }
-        checkRotorSetting(eachRotorArray, cm.numRotors(), cm.numPawls(), lws);
-        cm.insertRotors(eachRotorArray, cm.numPawls());
-        if (eachRotorArray
-                [cm.numRotors()].substring(0, 1).equals("(")) {
-            cm.setRotors("AAAA");
-        } else {
-            cm.setRotors(eachRotorArray
-                    [cm.numRotors()]);
-        }
-        Permutation pbp;
-        if (lws.indexOf("(") != -1) {
-            String plugboardCycle = lws.substring(lws.indexOf("("));
-            pbp = new Permutation(plugboardCycle, this._alphabet);
-        } else {
-            pbp = new Permutation("", this._alphabet);
+    /** Close _input and _output, unless they are the standard input and
+     *  output, so that Main may be run any number of times in one
+     *  JVM. */
+    private void closeFiles() {
+        try {
+            if (_inputIsFile) {
+                _input.close();
+            }
+        } finally {
+            if (_output != null && _output != System.out) {
+                _output.close();
+            }
         }
-        cm.setPlugboard(pbp);
-        return cm;
     }
 
-    /**
-     * It checks the validity of rotor.
-     * @param inputs input of array.
-     * @param rotorcount number of rotors
-     * @param movable number of movable
-     * @param lws linewithoutstar
-     */
-    public void checkRotorSetting(String [] inputs,
-                                  int rotorcount, int movable, String lws) {
-        boolean isReflectorThere = false;
-        for (int i = 0; i < this.reflector.size(); i += 1) {
-            if (inputs[0].equals(this.reflector.get(i).name())) {
-                isReflectorThere = true;
+    /** Serve connections on _serveAddress until killed. */
+    private void serve() {
+        readConfig();
+        final Server server = new Server(_configuration, _serveAddress);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.close();
             }
+        });
+        server.serve();
+    }
+
+    /** Convert the files named by _batchSource and _batchOutput (see
+     *  comment on main) on _batchThreads threads, reporting on the
+     *  standard output and the standard error. */
+    private void processBatch() {
+        readConfig();
+        BatchJob job = new BatchJob(_configuration, _batchThreads);
+        if (Files.isDirectory(Paths.get(_batchSource))) {
+            if (_batchOutput == null) {
+                throw error("--batch on a directory needs an output "
+                            + "directory");
+            }
+            job.addDirectory(_batchSource, _batchOutput);
+        } else if (_batchOutput != null) {
+            throw error("--batch on a manifest takes no output directory");
+        } else {
+            job.addManifest(_batchSource);
         }
-        if (!isReflectorThere) {
-            throw new EnigmaException("Reflector is not at index 0");
+        int failed = job.run(System.out, System.err);
+        if (failed > 0) {
+            throw error("%d of %d files failed", failed, job.size());
         }
-
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Convert binary file _byteInput into _byteOutput on a machine set
+     *  up by _byteSettings. */
+    private void processBytes() {
+        readConfig();
+        MessageProcessor processor = new MessageProcessor(_configuration);
+        processor.setUp(_byteSettings);
         try {
-            _alphabet = new Alphabet(this._config.nextLine());
-            int tr = this._config.nextInt();
-            int movableRotors = this._config.nextInt();
-            String [][] currentRotors = getRotorSpec();
-            ArrayList<Rotor> inputRotors = new ArrayList<Rotor>();
-            for (int i = 0; i < currentRotors.length; i++) {
-                inputRotors.add(readRotor(currentRotors[i]));
-            }
-            return new Machine(_alphabet, tr, movableRotors, inputRotors);
-        } catch (NoSuchElementException excp) {
-            throw new EnigmaException("configuration file truncated");
+            new ByteFileConverter(processor.machine())
+                .convert(Paths.get(_byteInput), Paths.get(_byteOutput));
+        } catch (InvalidPathException excp) {
+            throw error("bad file name %s", excp.getInput());
+        } finally {
+            processor.endSection();
         }
     }
 
-    /** Return a rotor, reading its description from _config.
-     * @param motorConfig it takes in all the motors.
-     * */
-    private Rotor readRotor(String [] motorConfig) {
+    /** Process _input one line at a time.  Message lines are converted in
+     *  place in the reader's buffer and grouped straight into _writer,
+     *  either all on this thread or, if _pipeline, on a Pipeline. */
+    private void processSerial() {
+        readConfig();
+        MessageProcessor processor = new MessageProcessor(_configuration);
+        if (_pipeline) {
+            new Pipeline(processor, _input, _writer).run();
+        } else {
+            processor.process(_input, _writer, false);
+        }
+    }
+
+    /** Process _input as process() does, but hand each section, from one
+     *  "*" settings line up to the next, to a pool of _threads threads,
+     *  each section on a machine of its own.  Sections are independent,
+     *  since a settings line resets everything.  Their results are printed
+     *  in input order, each as soon as it and all before it are done. */
+    private void processParallel() {
+        readConfig();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Section>> pending =
+            new ArrayDeque<Future<Section>>();
         try {
-            String name = motorConfig[0].trim();
-            String cycles = motorConfig[2].trim();
-            Permutation inputPerm = new Permutation(cycles, this._alphabet);
-            if (motorConfig[1].charAt(0) == 'M') {
-                String notches = motorConfig[1].substring(1);
-                MovingRotor move = new MovingRotor(name, inputPerm, notches);
-                this.movableRotor.add(move);
-                return move;
-            } else if (motorConfig[1].charAt(0) == 'N') {
-                FixedRotor fixed = new FixedRotor(name, inputPerm);
-                this.fixedRotor.add(fixed);
-                return fixed;
-            } else {
-                Reflector reflect = new Reflector(name, inputPerm);
-                this.reflector.add(reflect);
-                return reflect;
+            ArrayList<String> section = null;
+            while (this._input.next()) {
+                String line = this._input.line();
+                if (line.startsWith("*")) {
+                    if (section != null) {
+                        pending.add(pool.submit(sectionTask(section)));
+                    }
+                    section = new ArrayList<String>();
+                } else if (section == null) {
+                    throw new EnigmaException("Bad input");
+                }
+                section.add(line);
+                while (!pending.isEmpty() && (pending.peek().isDone()
+                        || pending.size() > MAX_PENDING * _threads)) {
+                    writeSection(pending.remove());
+                }
+            }
+            if (section == null) {
+                throw new EnigmaException("Bad input");
+            }
+            pending.add(pool.submit(sectionTask(section)));
+            while (!pending.isEmpty()) {
+                writeSection(pending.remove());
             }
-        } catch (NoSuchElementException excp) {
-            throw new EnigmaException("bad rotor description");
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    /**
-     * It returns the 2d array of all the rotors specs.
-     * @return out.
-     */
-    public String [][] getRotorSpec() {
-        this._config.nextLine();
-        int numberRemainLine = countLine();
-        this._freshConfig.nextLine();
-        this._freshConfig.nextLine();
-        String [][] out = new String [numberRemainLine][3];
-        int i = 0;
-        while (this._freshConfig.hasNextLine()) {
-            String [] temp = new String [3];
-            String tl = this._freshConfig.nextLine().trim();
-            if (!tl.substring(0, 1).equals("(")) {
-                String firstTwo = tl.substring(0, tl.indexOf("(") - 1);
-                String last = tl.substring(tl.indexOf("("));
-                last = last.trim();
-                String first = firstTwo.substring(0, firstTwo.indexOf(" "));
-                first = first.trim();
-                String two = firstTwo.substring(firstTwo.indexOf(" ") + 1);
-                two = two.trim();
-                temp[0] = first;
-                temp[1] = two;
-                temp[2] = last;
-                out[i] = temp;
-                i += 1;
-            } else {
-                out[i - 1][2] = out[i - 1][2] + " " + tl;
+    /** Return a task that sets up a new machine from the settings line
+     *  that begins SECTION, converts the message lines after it, and
+     *  returns the printed form of the results.  An error is returned with
+     *  whatever was printed before it, rather than thrown. */
+    private Callable<Section> sectionTask(final ArrayList<String> section) {
+        return new Callable<Section>() {
+            @Override
+            public Section call() {
+                MessageProcessor processor =
+                    new MessageProcessor(_configuration);
+                StringWriter text = new StringWriter();
+                MessageWriter out = new MessageWriter(text, SECTION_BUFFER);
+                Section result = new Section();
+                try {
+                    processor.setUp(section.get(0));
+                    for (int i = 1; i < section.size(); i++) {
+                        processor.convertLine(section.get(i), out);
+                    }
+                } catch (RuntimeException excp) {
+                    result._error = excp;
+                } finally {
+                    processor.endSection();
+                    out.flush();
+                    result._text = text.toString();
+                }
+                return result;
             }
-        }
-        return out;
+        };
     }
 
-    /**
-     * It counts the number of remaining lines.
-     * @return num
-     */
-    public int countLine() {
-        int num = 0;
-        while (this._config.hasNextLine()) {
-            if (!this._config.nextLine().trim().substring(0, 1).equals("(")) {
-                num += 1;
+    /** Print the result of section task RESULT, waiting if necessary, and
+     *  then throw its error, if it had one, as processing it serially
+     *  would have. */
+    private void writeSection(Future<Section> result) {
+        Section section;
+        try {
+            section = result.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
             }
+            throw error("section failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+        _writer.write(section._text);
+        if (section._error != null) {
+            throw section._error;
         }
-        return num;
     }
 
+    /** The outcome of converting one section. */
+    private static final class Section {
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String out = " ";
-        int num = 0;
-        for (int i = 0; i < msg.length(); i++) {
-            out += msg.charAt(i);
-            num++;
-            if (num % 5 == 0 && i != msg.length() - 1) {
-                out += " ";
-            }
-        }
-        System.out.println(out.trim());
+        /** The printed form of the lines converted. */
+        private String _text;
+
+        /** Why the section stopped early, or null if it did not. */
+        private RuntimeException _error;
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Read the machine configuration from file _configName, first saving
+     *  a snapshot of it if one was asked for, and give it a settings cache
+     *  and, if one was asked for, a keystream cache.  With --stats, also
+     *  register its Metrics over JMX. */
+    private void readConfig() {
+        _configuration = Configuration.read(_configName);
+        if (_snapshotName != null) {
+            _configuration.save(_snapshotName);
+        }
+        if (_keystreamTables > 0) {
+            _configuration.cacheKeystreams(_keystreamTables);
+        }
+        _configuration.cacheSettings(_settingsLines);
+        if (_stats) {
+            Metrics.register(_configuration);
+        }
+    }
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** True iff _input reads a file rather than the standard input. */
+    private boolean _inputIsFile;
 
-    /** Fresh line reader. */
-    private Scanner _freshConfig;
+    /** Name of the machine configuration file. */
+    private String _configName;
 
-    /** Arraylist of all the rotors. */
-    private ArrayList<Rotor> movableRotor = new ArrayList<Rotor>();
+    /** Name of the file to save a configuration snapshot to, or null. */
+    private String _snapshotName;
 
-    /** Arraylist of fixed.*/
-    private ArrayList<Rotor> fixedRotor = new ArrayList<Rotor>();
+    /** The machine configuration. */
+    private Configuration _configuration;
 
-    /** ArrayList of reflectors.*/
-    private ArrayList<Rotor> reflector = new ArrayList<Rotor>();
+    /** Address to serve on, or null to process _input. */
+    private SocketAddress _serveAddress;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** Buffered, grouping writer onto _output. */
+    private MessageWriter _writer;
+
+    /** Directory or manifest of files to convert in a batch, or null. */
+    private String _batchSource;
+
+    /** Directory for the files converted from directory _batchSource, or
+     *  null. */
+    private String _batchOutput;
+
+    /** Settings line for converting a binary file, or null. */
+    private String _byteSettings;
+
+    /** Binary file to convert. */
+    private String _byteInput;
+
+    /** File to write the converted binary file to. */
+    private String _byteOutput;
+
+    /** Number of threads converting files in a batch; 0 for no batch. */
+    private int _batchThreads;
+
+    /** Number of threads processing sections; 1 to process them in turn. */
+    private int _threads = 1;
+
+    /** True iff counting Metrics and printing them when done. */
+    private boolean _stats;
+
+    /** True iff serial processing runs as a Pipeline. */
+    private boolean _pipeline =
+        Runtime.getRuntime().availableProcessors() > 1;
+
+    /** Number of keystream tables to keep, or 0 for none. */
+    private int _keystreamTables;
+
+    /** Number of compiled settings lines to keep. */
+    private int _settingsLines = SETTINGS_CACHE;
+
+    /** Default number of compiled settings lines kept. */
+    static final int SETTINGS_CACHE = 1024;
+
+    /** Default number of keystream tables kept: about 7MB of them with 26
+     *  letters and three pawls. */
+    static final int KEYSTREAM_TABLES = 16;
+
+    /** Most sections in flight per thread when processing in parallel. */
+    private static final int MAX_PENDING = 4;
+
+    /** Output buffer size for one section processed in parallel. */
+    private static final int SECTION_BUFFER = 1 << 12;
+
 }
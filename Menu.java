@@ -0,0 +1,180 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The menu of a crib: a graph whose nodes are letters and which has an
+ *  edge between the crib letter and the cipher letter at each position of
+ *  the crib, labelled with that position.  Since an enigma's scrambler
+ *  (the rotors without the plugboard) is an involution, each edge (A, B,
+ *  I) says that the plugboard partners of A and B are exchanged by the
+ *  scrambler at crib position I; a Bombe tests rotor settings against
+ *  these constraints.  Edges are held in flat arrays by letter, for the
+ *  Bombe's inner loop.
+ *  @author Jake Kim
+ */
+final class Menu {
+
+    /** The menu of CRIB, a guess at the plaintext of the part of
+     *  CIPHERTEXT that starts OFFSET letters in, over ALPHABET.
+     *  Whitespace in either is ignored, so that ciphertext may be given
+     *  in groups of five as Main prints it. */
+    Menu(Alphabet alphabet, String ciphertext, String crib, int offset) {
+        int[] cipher = indices(alphabet, ciphertext);
+        int[] plain = indices(alphabet, crib);
+        if (offset < 0 || plain.length == 0
+            || offset + plain.length > cipher.length) {
+            throw error("crib does not fit the ciphertext at %d", offset);
+        }
+        _alphabet = alphabet;
+        _offset = offset;
+        _length = plain.length;
+        int size = alphabet.size();
+        _start = new int[size + 1];
+        for (int i = 0; i < _length; i += 1) {
+            int a = plain[i], b = cipher[offset + i];
+            if (a == b) {
+                throw error("crib letter %c cannot encipher to itself at %d",
+                            alphabet.toChar(a), offset + i);
+            }
+            _start[a + 1] += 1;
+            _start[b + 1] += 1;
+        }
+        int best = plain[0];
+        for (int a = 0; a < size; a += 1) {
+            if (_start[a + 1] > _start[best + 1]) {
+                best = a;
+            }
+            _start[a + 1] += _start[a];
+        }
+        _testLetter = best;
+        _other = new int[2 * _length];
+        _position = new int[2 * _length];
+        int[] next = _start.clone();
+        for (int i = 0; i < _length; i += 1) {
+            int a = plain[i], b = cipher[offset + i];
+            _other[next[a]] = b;
+            _position[next[a]++] = i;
+            _other[next[b]] = a;
+            _position[next[b]++] = i;
+        }
+    }
+
+    /** Return the indices in ALPHABET of the characters of TEXT, ignoring
+     *  whitespace. */
+    private static int[] indices(Alphabet alphabet, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result[n++] = MachineState.index(alphabet, c);
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of letters of ciphertext before the crib. */
+    int offset() {
+        return _offset;
+    }
+
+    /** Return the length of the crib. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the letter with the most edges, from which a Bombe starts
+     *  its hypotheses. */
+    int testLetter() {
+        return _testLetter;
+    }
+
+    /** Return the number of the first edge of letter A; its edges are
+     *  numbered up to first(A + 1). */
+    int first(int a) {
+        return _start[a];
+    }
+
+    /** Return the letter at the other end of edge E. */
+    int other(int e) {
+        return _other[e];
+    }
+
+    /** Return the crib position labelling edge E. */
+    int position(int e) {
+        return _position[e];
+    }
+
+    /** Return the numbers of the first edges of each letter, as for
+     *  first(), followed by the number of edges.  The result is a copy. */
+    int[] firsts() {
+        return _start.clone();
+    }
+
+    /** Return the letters at the far ends of all edges, as for other().
+     *  The result is a copy. */
+    int[] others() {
+        return _other.clone();
+    }
+
+    /** Return the crib positions labelling all edges, as for position().
+     *  The result is a copy. */
+    int[] positions() {
+        return _position.clone();
+    }
+
+    /** Return the number of independent closed loops in the part of me
+     *  connected to testLetter().  Each loop is a constraint that a wrong
+     *  rotor setting usually fails, so a menu with too few of them lets
+     *  through many false stops. */
+    int loops() {
+        int size = _alphabet.size();
+        int[] stack = new int[size];
+        boolean[] seen = new boolean[size];
+        int letters = 0, ends = 0, top = 0;
+        stack[top++] = _testLetter;
+        seen[_testLetter] = true;
+        while (top > 0) {
+            int a = stack[--top];
+            letters += 1;
+            ends += _start[a + 1] - _start[a];
+            for (int e = _start[a]; e < _start[a + 1]; e += 1) {
+                if (!seen[_other[e]]) {
+                    seen[_other[e]] = true;
+                    stack[top++] = _other[e];
+                }
+            }
+        }
+        return ends / 2 - letters + 1;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Letters of ciphertext before the crib. */
+    private final int _offset;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** The letter with the most edges. */
+    private final int _testLetter;
+
+    /** The edges of letter A are numbered from _start[A] up to
+     *  _start[A + 1]. */
+    private final int[] _start;
+
+    /** The letter at the far end of each edge. */
+    private final int[] _other;
+
+    /** The crib position labelling each edge. */
+    private final int[] _position;
+
+}
@@ -0,0 +1,159 @@
+package enigma;
+
+/** Applies the settings lines and converts the message lines of one input
+ *  stream, on a machine of its own built from a shared Configuration.
+ *  Each "*" line resets the machine completely; every other line is a
+ *  message, printed in groups of five.
+ *  @author Jake Kim
+ */
+final class MessageProcessor {
+
+    /** A processor whose machine is built from CONFIG. */
+    MessageProcessor(Configuration config) {
+        _config = config;
+        _machine = config.newMachine();
+    }
+
+    /** Return my machine. */
+    Machine machine() {
+        return _machine;
+    }
+
+    /** Convert the lines of IN, which must begin with a settings line, and
+     *  write the results to OUT.  Message lines are read, converted and
+     *  written a part at a time, so that memory use does not depend on
+     *  their length.  If FLUSHWHENIDLE, flush OUT whenever IN has no more
+     *  input buffered, so that a peer waiting on each result receives
+     *  it. */
+    void process(LineReader in, MessageWriter out, boolean flushWhenIdle) {
+        if (!in.nextPart() || !in.startsWith('*')) {
+            throw new EnigmaException("Bad input");
+        }
+        try {
+            do {
+                if (in.startsLine() && in.startsWith('*')) {
+                    in.completeLine();
+                    setUp(in.line());
+                } else {
+                    convertPart(in, out);
+                }
+                if (flushWhenIdle && !in.ready()) {
+                    out.flush();
+                }
+            } while (in.nextPart());
+        } finally {
+            endSection();
+        }
+    }
+
+    /** Convert the current part of a line of IN in place and write it to
+     *  OUT, ending the output line if it ends its line. */
+    void convertPart(LineReader in, MessageWriter out) {
+        char[] part = in.buffer();
+        int n = convert(part, in.length());
+        out.writePart(part, 0, n);
+        if (in.endsLine()) {
+            out.endLine();
+        }
+    }
+
+    /** Convert LINE and write it to OUT. */
+    void convertLine(String line, MessageWriter out) {
+        char[] chars = line.toCharArray();
+        int n = convert(chars, chars.length);
+        out.writeGroups(chars, 0, n);
+    }
+
+    /** Convert the first LEN characters of CHARS in place, skipping
+     *  whitespace, and return the number of characters converted. */
+    int convert(char[] chars, int len) {
+        int n = _machine.convert(chars, 0, len, chars, 0);
+        if (_section != null) {
+            _section.add(n);
+        }
+        return n;
+    }
+
+    /** End the current section of input, if any, recording it for the
+     *  Flight Recorder. */
+    void endSection() {
+        if (_section != null) {
+            _section.end();
+            if (_section.shouldCommit()) {
+                _section.commit();
+            }
+            _section = null;
+        }
+    }
+
+    /** Set my machine according to the specification given on SETTINGS,
+     *  which must have the format specified in the assignment: "*", the
+     *  reflector and other rotor names, the rotor setting and then any
+     *  plugboard cycles.  If my configuration has a settings cache, a line
+     *  already compiled is installed from it without being read again.
+     *  This ends any current section of input and begins another. */
+    void setUp(String settings) {
+        endSection();
+        _section = new Metrics.SectionEvent();
+        _section.begin();
+        Metrics.rekey();
+        SettingsCache cache = _config.settingsCache();
+        if (cache == null) {
+            compile(settings);
+            return;
+        }
+        CompiledSettings compiled = cache.get(settings);
+        if (compiled != null) {
+            _machine.install(compiled);
+        } else {
+            compile(settings);
+            cache.put(settings, _machine.compile());
+        }
+    }
+
+    /** Set my machine according to SETTINGS, as for setUp, reading and
+     *  checking the whole line. */
+    private void compile(String settings) {
+        Machine m = _machine;
+        Alphabet alphabet = _config.alphabet();
+        if (settings.length() < 2) {
+            throw new EnigmaException("bad settings line");
+        }
+        String lws = settings.substring(2);
+        String [] nra = lws.split(" ");
+        if (nra.length <= m.numRotors()) {
+            throw new EnigmaException("Rotor numbers do not match");
+        }
+        if (!_config.isReflector(nra[0])) {
+            throw new EnigmaException("Reflector is not at index 0");
+        }
+        String [] names = new String [m.numRotors()];
+        System.arraycopy(nra, 0, names, 0, m.numRotors());
+        m.insertRotors(names, m.numPawls());
+        if (nra[m.numRotors()].startsWith("(")) {
+            char first = alphabet.toChar(0);
+            m.setRotors(new String(new char[m.numRotors() - 1])
+                        .replace('\0', first));
+        } else {
+            m.setRotors(alphabet.decode(nra[m.numRotors()]));
+        }
+        Permutation pbp;
+        if (lws.indexOf("(") != -1) {
+            String plugboardCycle = lws.substring(lws.indexOf("("));
+            pbp = new Permutation(plugboardCycle, alphabet);
+        } else {
+            pbp = new Permutation("", alphabet);
+        }
+        m.setPlugboard(pbp);
+    }
+
+    /** The machine configuration. */
+    private final Configuration _config;
+
+    /** My machine. */
+    private final Machine _machine;
+
+    /** The section of input being converted, or null. */
+    private Metrics.SectionEvent _section;
+
+}
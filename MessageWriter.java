@@ -0,0 +1,119 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted messages in groups of five characters (except that the
+ *  last group of a line may have fewer), gathering output into one large
+ *  buffer that is handed to the underlying writer only when it fills or is
+ *  flushed.
+ *  @author Jake Kim
+ */
+final class MessageWriter {
+
+    /** A writer onto OUT with a buffer of SIZE characters. */
+    MessageWriter(Writer out, int size) {
+        _out = out;
+        _buffer = new char[Math.max(size, GROUP + 1)];
+    }
+
+    /** A writer onto OUT with a buffer of BUFFER_SIZE characters. */
+    MessageWriter(Writer out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    /** Write the LEN characters of MSG at OFF in groups of five, followed
+     *  by a line separator. */
+    void writeGroups(char[] msg, int off, int len) {
+        writePart(msg, off, len);
+        endLine();
+    }
+
+    /** Write the LEN characters of MSG at OFF as the next part of the
+     *  current line, in groups of five continuing from those of the
+     *  parts before it, so that a message written in any number of parts
+     *  is grouped as if written whole. */
+    void writePart(char[] msg, int off, int len) {
+        for (int i = 0, n; i < len; i += n) {
+            if (_buffer.length - _size <= GROUP) {
+                drain();
+            }
+            if (_inGroup == GROUP) {
+                _buffer[_size++] = ' ';
+                _inGroup = 0;
+            }
+            n = Math.min(GROUP - _inGroup, len - i);
+            System.arraycopy(msg, off + i, _buffer, _size, n);
+            _size += n;
+            _inGroup += n;
+        }
+    }
+
+    /** End the current line. */
+    void endLine() {
+        _inGroup = 0;
+        write(NEWLINE);
+    }
+
+    /** Write MSG in groups of five, followed by a line separator. */
+    void writeGroups(String msg) {
+        char[] chars = msg.toCharArray();
+        writeGroups(chars, 0, chars.length);
+    }
+
+    /** Write TEXT as it stands. */
+    void write(String text) {
+        for (int i = 0, n; i < text.length(); i += n) {
+            if (_size == _buffer.length) {
+                drain();
+            }
+            n = Math.min(text.length() - i, _buffer.length - _size);
+            text.getChars(i, i + n, _buffer, _size);
+            _size += n;
+        }
+    }
+
+    /** Pass everything buffered to the underlying writer and flush it. */
+    void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Pass everything buffered to the underlying writer. */
+    private void drain() {
+        try {
+            _out.write(_buffer, 0, _size);
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _size = 0;
+    }
+
+    /** Characters per group. */
+    static final int GROUP = 5;
+
+    /** Default buffer size. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Line separator written after each message. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Destination of output. */
+    private final Writer _out;
+
+    /** Buffered output, in its first _size characters. */
+    private final char[] _buffer;
+
+    /** Number of characters buffered. */
+    private int _size;
+
+    /** Number of characters in the current line's last group. */
+    private int _inGroup;
+
+}
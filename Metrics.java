@@ -0,0 +1,283 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import static enigma.EnigmaException.*;
+
+/** Counts of the work done by all machines in this JVM: characters
+ *  converted, rotor advances and double steps, re-keys by settings lines,
+ *  and configuration loads and the time they took.  Counting is off until
+ *  enable is called, and while it is off the only cost to conversion is a
+ *  null check per character.  While it is on, each MachineState counts in
+ *  a Tally of its own, with no sharing, and adds it to the totals, which
+ *  are striped LongAdders, at the end of each bulk conversion and every
+ *  FLUSH characters; the totals may thus lag by less than FLUSH characters
+ *  per machine.
+ *
+ *  Configuration loads and the sections of input begun by each settings
+ *  line are also recorded as the JDK Flight Recorder events
+ *  enigma.ConfigLoad and enigma.Section whenever a recording asks for
+ *  them, whether or not counting is on.  An instance is the MXBean that
+ *  presents the totals, with those of a settings cache, over JMX.
+ *  @author Jake Kim
+ */
+final class Metrics implements MetricsMXBean {
+
+    /** An MXBean showing the totals and the counts of settings cache
+     *  CACHE, unless it is null. */
+    Metrics(SettingsCache cache) {
+        _cache = cache;
+    }
+
+    /** Turn counting on for machine states created from now on. */
+    static void enable() {
+        _enabled = true;
+    }
+
+    /** Turn counting off for machine states created from now on.  Those
+     *  already counting go on doing so. */
+    static void disable() {
+        _enabled = false;
+    }
+
+    /** Return true iff counting is on. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Return a new Tally for a MachineState, or null if counting is
+     *  off. */
+    static Tally tally() {
+        return _enabled ? new Tally() : null;
+    }
+
+    /** Count one re-key of a machine by a settings line. */
+    static void rekey() {
+        if (_enabled) {
+            REKEYS.increment();
+        }
+    }
+
+    /** Return a ConfigLoad event begun now, for configLoaded. */
+    static ConfigLoadEvent configLoad() {
+        ConfigLoadEvent event = new ConfigLoadEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Record the end of config load EVENT, begun START nanoseconds into
+     *  System.nanoTime, of the file NAME, which was a snapshot iff
+     *  SNAPSHOT. */
+    static void configLoaded(ConfigLoadEvent event, long start, String name,
+                             boolean snapshot) {
+        if (_enabled) {
+            CONFIG_LOADS.increment();
+            CONFIG_NANOS.add(System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event._file = name;
+            event._snapshot = snapshot;
+            event.commit();
+        }
+    }
+
+    /** Register a Metrics for CONFIG with the platform MBean server as
+     *  OBJECT_NAME, in place of any registered before. */
+    static void register(Configuration config) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new Metrics(config.settingsCache()), name);
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return CHARACTERS.sum();
+    }
+
+    @Override
+    public long getRotorAdvances() {
+        return ADVANCES.sum();
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return DOUBLE_STEPS.sum();
+    }
+
+    @Override
+    public long getRekeys() {
+        return REKEYS.sum();
+    }
+
+    @Override
+    public long getConfigLoads() {
+        return CONFIG_LOADS.sum();
+    }
+
+    @Override
+    public double getConfigParseMillis() {
+        return CONFIG_NANOS.sum() / 1e6;
+    }
+
+    @Override
+    public long getSettingsCacheHits() {
+        return _cache == null ? 0 : _cache.hits();
+    }
+
+    @Override
+    public long getSettingsCacheMisses() {
+        return _cache == null ? 0 : _cache.misses();
+    }
+
+    @Override
+    public long getSettingsCacheEvictions() {
+        return _cache == null ? 0 : _cache.evictions();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("characters converted: %d%n"
+                                    + "rotor advances: %d%n"
+                                    + "double steps: %d%n"
+                                    + "re-keys: %d%n"
+                                    + "config loads: %d in %.3f ms%n",
+                                    getCharactersConverted(),
+                                    getRotorAdvances(), getDoubleSteps(),
+                                    getRekeys(), getConfigLoads(),
+                                    getConfigParseMillis()));
+        if (_cache != null) {
+            result.append(_cache).append(String.format("%n"));
+        }
+        return result.toString();
+    }
+
+    /** The counts of one MachineState not yet added to the totals. */
+    static final class Tally {
+
+        /** Count one character converted, adding my counts to the totals
+         *  every FLUSH characters. */
+        void character() {
+            _characters += 1;
+            if (_characters == FLUSH) {
+                flush();
+            }
+        }
+
+        /** Count one rotor advance, which is a double step iff
+         *  ISDOUBLE. */
+        void advance(boolean isDouble) {
+            _advances += 1;
+            if (isDouble) {
+                _doubleSteps += 1;
+            }
+        }
+
+        /** Add my counts to the totals and clear them. */
+        void flush() {
+            if (_characters != 0) {
+                CHARACTERS.add(_characters);
+                ADVANCES.add(_advances);
+                DOUBLE_STEPS.add(_doubleSteps);
+                _characters = _advances = _doubleSteps = 0;
+            }
+        }
+
+        /** Characters converted. */
+        private long _characters;
+
+        /** Rotor advances. */
+        private long _advances;
+
+        /** Rotor advances made by a rotor's own notch, not the rotor to its
+         *  right. */
+        private long _doubleSteps;
+    }
+
+    /** A configuration load, recorded for the Flight Recorder. */
+    @Name("enigma.ConfigLoad")
+    @Label("Enigma Configuration Load")
+    @Category("Enigma")
+    @Description("Reading and compiling a machine configuration")
+    static final class ConfigLoadEvent extends Event {
+
+        /** Name of the file loaded. */
+        @Name("file")
+        @Label("File")
+        private String _file;
+
+        /** True iff the file was a binary snapshot. */
+        @Name("snapshot")
+        @Label("Snapshot")
+        private boolean _snapshot;
+    }
+
+    /** The conversion of one section of input, from a settings line up to
+     *  the next, recorded for the Flight Recorder. */
+    @Name("enigma.Section")
+    @Label("Enigma Section")
+    @Category("Enigma")
+    @Description("Converting the messages under one settings line")
+    static final class SectionEvent extends Event {
+
+        /** Record that CHARS more characters were converted. */
+        void add(long chars) {
+            _characters += chars;
+        }
+
+        /** Characters converted. */
+        @Name("characters")
+        @Label("Characters")
+        private long _characters;
+    }
+
+    /** Name under which the MXBean is registered. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Number of characters a Tally counts before adding them to the
+     *  totals. */
+    static final int FLUSH = 1 << 14;
+
+    /** Total characters converted. */
+    private static final LongAdder CHARACTERS = new LongAdder();
+
+    /** Total rotor advances. */
+    private static final LongAdder ADVANCES = new LongAdder();
+
+    /** Total double steps. */
+    private static final LongAdder DOUBLE_STEPS = new LongAdder();
+
+    /** Total re-keys. */
+    private static final LongAdder REKEYS = new LongAdder();
+
+    /** Total configuration loads. */
+    private static final LongAdder CONFIG_LOADS = new LongAdder();
+
+    /** Total time of configuration loads, in nanoseconds. */
+    private static final LongAdder CONFIG_NANOS = new LongAdder();
+
+    /** True iff counting is on. */
+    private static volatile boolean _enabled;
+
+    /** The settings cache shown, or null. */
+    private final SettingsCache _cache;
+
+}
@@ -0,0 +1,38 @@
+package enigma;
+
+/** The totals kept by Metrics, as presented over JMX under the name
+ *  Metrics.OBJECT_NAME.  (JMX requires this interface to be public.)
+ *  @author Jake Kim
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of rotor advances. */
+    long getRotorAdvances();
+
+    /** Return the number of double steps: rotor advances made by a rotor's
+     *  own notch. */
+    long getDoubleSteps();
+
+    /** Return the number of machines re-keyed by settings lines. */
+    long getRekeys();
+
+    /** Return the number of configurations loaded. */
+    long getConfigLoads();
+
+    /** Return the total time taken to load configurations, in
+     *  milliseconds. */
+    double getConfigParseMillis();
+
+    /** Return the number of hits in the settings cache. */
+    long getSettingsCacheHits();
+
+    /** Return the number of misses in the settings cache. */
+    long getSettingsCacheMisses();
+
+    /** Return the number of evictions from the settings cache. */
+    long getSettingsCacheEvictions();
+
+}
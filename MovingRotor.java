@@ -33,15 +33,17 @@ class MovingRotor extends Rotor {
      * @return return boolean
      */
     boolean atNotch() {
-        String [] notches = this.notch.split("");
-        for (int i = 0; i < notches.length; i++) {
-            if (notches[i].equals(this.alphabet().toChar(setting()) + "")) {
-                return true;
-            }
-        }
-        return false;
+        return atNotch(setting());
+    }
 
+    /** Return true iff setting POSN is one of my notches. */
+    boolean atNotch(int posn) {
+        return this.notch.indexOf(this.alphabet().toChar(posn)) >= 0;
+    }
 
+    /** Return my notches, as characters of my alphabet. */
+    String notches() {
+        return this.notch;
     }
 
     @Override
@@ -0,0 +1,291 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** Scores texts, given as indices into an alphabet, by the log
+ *  probabilities of their n-letter windows (their n-grams) in some
+ *  language.  The table is flat: the window of letters L0, ..., Ln-1 has
+ *  the log probability at index L0 * size^(n-1) + ... + Ln-1, so that
+ *  the index of each window follows from the last by a rolling hash.
+ *
+ *  Tables are learned from a text by train, and may be saved to a file
+ *  holding a short header (magic number, alphabet, window length) and
+ *  then the table as little-endian floats.  read maps such a file rather
+ *  than loading it, so the table is shared by every process using it and
+ *  costs no heap.
+ *  @author Jake Kim
+ */
+final class NgramScorer {
+
+    /** Save a table of ORDER-letter windows learned from the text in the
+     *  file named CORPUS to the file named OUTPUT, as given by ARGS:
+     *  ORDER, CORPUS, OUTPUT and optionally the name of a configuration
+     *  whose alphabet to use instead of the upper-case letters. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: NgramScorer ORDER CORPUS OUTPUT "
+                            + "[CONFIG]");
+            }
+            int order;
+            try {
+                order = Integer.parseInt(args[0]);
+            } catch (NumberFormatException excp) {
+                throw error("bad order %s", args[0]);
+            }
+            Alphabet alphabet = args.length > 3
+                ? Configuration.read(args[3]).alphabet() : new Alphabet();
+            String corpus;
+            try {
+                corpus = new String(Files.readAllBytes(Paths.get(args[1])),
+                                    Charset.defaultCharset());
+            } catch (IOException | InvalidPathException excp) {
+                throw error("could not read %s", args[1]);
+            }
+            train(alphabet, order, corpus).save(args[2]);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A scorer of ORDER-letter windows over ALPHABET with log
+     *  probabilities TABLE, which has size^ORDER entries. */
+    NgramScorer(Alphabet alphabet, int order, float[] table) {
+        this(alphabet, order, FloatBuffer.wrap(table));
+    }
+
+    /** A scorer as above whose table is the contents of TABLE. */
+    private NgramScorer(Alphabet alphabet, int order, FloatBuffer table) {
+        if (order < 1
+            || Math.pow(alphabet.size(), order) != table.capacity()) {
+            throw error("%d-gram table for %d letters has %d entries",
+                        order, alphabet.size(), table.capacity());
+        }
+        _alphabet = alphabet;
+        _order = order;
+        _table = table;
+        _high = (int) Math.pow(alphabet.size(), order - 1);
+    }
+
+    /** Return a scorer of ORDER-letter windows over ALPHABET whose log
+     *  probabilities are estimated from CORPUS.  Characters of CORPUS not
+     *  in ALPHABET separate words and are otherwise ignored; windows never
+     *  seen get the log probability of a window seen a tenth of a
+     *  time. */
+    static NgramScorer train(Alphabet alphabet, int order,
+                             CharSequence corpus) {
+        int size = alphabet.size();
+        double entries = Math.pow(size, order);
+        if (order < 1 || entries > MAX_ENTRIES) {
+            throw error("cannot make a %d-gram table for %d letters", order,
+                        size);
+        }
+        long[] counts = new long[(int) entries];
+        int modulus = (int) (entries / size);
+        int window = 0, run = 0;
+        long total = 0;
+        for (int i = 0; i < corpus.length(); i += 1) {
+            int c = alphabet.toInt(corpus.charAt(i));
+            if (c < 0) {
+                run = 0;
+                continue;
+            }
+            window = (window % modulus) * size + c;
+            run += 1;
+            if (run >= order) {
+                counts[window] += 1;
+                total += 1;
+            }
+        }
+        float[] table = new float[counts.length];
+        double floor = Math.log10(UNSEEN / Math.max(total, 1));
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = (float) (counts[i] == 0 ? floor
+                                : Math.log10((double) counts[i] / total));
+        }
+        return new NgramScorer(alphabet, order, table);
+    }
+
+    /** Return true iff the file named NAME holds a saved table. */
+    static boolean isTable(String name) {
+        try (FileChannel channel = FileChannel.open(Paths.get(name))) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(magic, 0);
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the scorer saved in the file named NAME, whose table stays
+     *  in the file, mapped into memory. */
+    static NgramScorer read(String name) {
+        try (FileChannel channel = FileChannel.open(Paths.get(name))) {
+            ByteBuffer file =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (file.remaining() < Integer.BYTES
+                || file.getInt() != MAGIC) {
+                throw error("%s is not an n-gram table", name);
+            }
+            Alphabet alphabet = new Alphabet(Configuration.getString(file));
+            int order = file.getInt();
+            file.position(tableStart(alphabet));
+            FloatBuffer table =
+                file.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            return new NgramScorer(alphabet, order, table);
+        } catch (InvalidPathException | IOException excp) {
+            throw error("could not open %s", name);
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            throw error("n-gram table %s truncated", name);
+        }
+    }
+
+    /** Write me to the file named NAME, to be read by read. */
+    void save(String name) {
+        int start = tableStart(_alphabet);
+        ByteBuffer out = ByteBuffer.allocate(start + Float.BYTES
+                                             * _table.capacity());
+        out.putInt(MAGIC);
+        Configuration.putString(out, _alphabet.toString());
+        out.putInt(_order);
+        out.position(start);
+        out.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+            .put(_table.duplicate().clear());
+        out.clear();
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the offset of the table in a file holding a table over
+     *  ALPHABET: the size of the header, rounded up to a whole number of
+     *  floats. */
+    private static int tableStart(Alphabet alphabet) {
+        int header = 2 * Integer.BYTES
+            + Configuration.stringSize(alphabet.toString());
+        return (header + Float.BYTES - 1) / Float.BYTES * Float.BYTES;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of letters in my windows. */
+    int order() {
+        return _order;
+    }
+
+    /** Return the log probability of the window of TEXT at START. */
+    float window(int[] text, int start) {
+        int size = _alphabet.size(), index = 0;
+        for (int k = 0; k < _order; k += 1) {
+            index = index * size + text[start + k];
+        }
+        return _table.get(index);
+    }
+
+    /** Return the index of the window that follows the window at index
+     *  WINDOW when letter C comes next.  Starting from index 0, after
+     *  order() letters this is the index of the window of the last
+     *  order() letters, whose log probability is logProbability of it;
+     *  so the output of Machine.convert(int) may be scored a letter at a
+     *  time. */
+    int roll(int window, int c) {
+        return (window % _high) * _alphabet.size() + c;
+    }
+
+    /** Return the log probability of the window at index WINDOW. */
+    float logProbability(int window) {
+        return _table.get(window);
+    }
+
+    /** Return the sum of the log probabilities of the windows of the LEN
+     *  indices of TEXT at OFF. */
+    double score(int[] text, int off, int len) {
+        int size = _alphabet.size(), order = _order, high = _high;
+        int index = 0;
+        double sum = 0;
+        for (int j = 0; j < len; j += 1) {
+            if (j >= order) {
+                index -= text[off + j - order] * high;
+            }
+            index = index * size + text[off + j];
+            if (j >= order - 1) {
+                sum += _table.get(index);
+            }
+        }
+        return sum;
+    }
+
+    /** Return the sum of the log probabilities of the windows of the LEN
+     *  characters of TEXT at OFF.  Whitespace is skipped, so that text
+     *  may be scored in groups of five as Main prints it; other
+     *  characters not in my alphabet end one window and start the
+     *  next. */
+    double score(char[] text, int off, int len) {
+        int size = _alphabet.size(), order = _order, high = _high;
+        int index = 0, run = 0;
+        double sum = 0;
+        for (int j = off; j < off + len; j += 1) {
+            int c = _alphabet.toInt(text[j]);
+            if (c < 0) {
+                if (!Character.isWhitespace(text[j])) {
+                    run = 0;
+                }
+                continue;
+            }
+            index = (index % high) * size + c;
+            if (run < order) {
+                run += 1;
+            }
+            if (run == order) {
+                sum += _table.get(index);
+            }
+        }
+        return sum;
+    }
+
+    /** Largest table train makes. */
+    static final int MAX_ENTRIES = 1 << 26;
+
+    /** First four bytes of a saved table: "NGR" and a format version. */
+    static final int MAGIC = 0x4E475201;
+
+    /** Count assumed for windows not seen in training. */
+    private static final double UNSEEN = 0.1;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Letters per window. */
+    private final int _order;
+
+    /** Log probabilities of all windows. */
+    private final FloatBuffer _table;
+
+    /** Place value of the first letter of a window: size^(order - 1). */
+    private final int _high;
+
+}
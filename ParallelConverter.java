@@ -0,0 +1,170 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts one long message through a Machine on several threads at once.
+ *  The message is cut into chunks; each chunk's first character offset is
+ *  found by counting the non-whitespace characters before it, and the
+ *  chunk is converted by its own copy of the machine's state,
+ *  sought to that offset.  The result is identical to converting the
+ *  whole message with Machine.convert, and afterwards the machine is left
+ *  as that conversion would leave it.
+ *
+ *  This is for programs holding one long message in memory.  Main does
+ *  not use it: its --parallel option runs whole sections of input, from
+ *  one settings line to the next, on separate machines instead.
+ *  @author Jake Kim
+ */
+final class ParallelConverter {
+
+    /** A converter for MACHINE that runs its chunks in POOL. */
+    ParallelConverter(Machine machine, ForkJoinPool pool) {
+        _machine = machine;
+        _pool = pool;
+    }
+
+    /** A converter for MACHINE that runs its chunks in the common pool. */
+    ParallelConverter(Machine machine) {
+        this(machine, ForkJoinPool.commonPool());
+    }
+
+    /** Returns the encoding/decoding of MSG, as for Machine.convert. */
+    String convert(String msg) {
+        char[] in = msg.toCharArray();
+        char[] out = new char[in.length];
+        int n = convert(in, 0, in.length, out, 0);
+        return new String(out, 0, n);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, skipping
+     *  whitespace, and store the results in OUT starting at OUTOFF, as for
+     *  Machine.convert.  IN and OUT must not overlap.  Returns the number
+     *  of characters stored.  If the machine's orbit is not recorded,
+     *  seeking each chunk would walk from the origin, so the message is
+     *  converted serially instead.  Working the orbit out takes at most
+     *  RotorOrbit.MAX_MOVES steps, however long its period. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (len < 2 * CHUNK || _pool.getParallelism() < 2
+            || !_machine.orbit().recorded()) {
+            return _machine.convert(in, off, len, out, outOff);
+        }
+        Job job = new Job(in, off, len, out, outOff);
+        _pool.invoke(job.new Count(0, job._chunks));
+        for (int i = 0; i < job._chunks; i++) {
+            job._starts[i + 1] += job._starts[i];
+        }
+        _pool.invoke(job.new Convert(0, job._chunks));
+        int total = job._starts[job._chunks];
+        _machine.seek(job._base + total);
+        return total;
+    }
+
+    /** One call of convert: its buffers and the machine state it began
+     *  from. */
+    private final class Job {
+
+        /** A conversion of the LEN characters of IN at OFF into OUT at
+         *  OUTOFF. */
+        Job(char[] in, int off, int len, char[] out, int outOff) {
+            _in = in;
+            _off = off;
+            _len = len;
+            _out = out;
+            _outOff = outOff;
+            _chunks = (len + CHUNK - 1) / CHUNK;
+            _starts = new int[_chunks + 1];
+            _state = _machine.state();
+            _orbit = _machine.orbit();
+            _base = _state.offset();
+        }
+
+        /** Counts the non-whitespace characters of a run of chunks. */
+        private final class Count extends RecursiveAction {
+
+            /** Count chunks LO through HI-1. */
+            Count(int lo, int hi) {
+                _lo = lo;
+                _hi = hi;
+            }
+
+            @Override
+            protected void compute() {
+                if (_hi - _lo > 1) {
+                    int mid = (_lo + _hi) >>> 1;
+                    invokeAll(new Count(_lo, mid), new Count(mid, _hi));
+                    return;
+                }
+                int start = _off + _lo * CHUNK;
+                int end = _off + Math.min(_len, (_lo + 1) * CHUNK);
+                int n = 0;
+                for (int i = start; i < end; i++) {
+                    if (!Character.isWhitespace(_in[i])) {
+                        n++;
+                    }
+                }
+                _starts[_lo + 1] = n;
+            }
+
+            /** Range of chunks counted. */
+            private final int _lo, _hi;
+        }
+
+        /** Converts a run of chunks, each on its own machine state. */
+        private final class Convert extends RecursiveAction {
+
+            /** Convert chunks LO through HI-1. */
+            Convert(int lo, int hi) {
+                _lo = lo;
+                _hi = hi;
+            }
+
+            @Override
+            protected void compute() {
+                if (_hi - _lo > 1) {
+                    int mid = (_lo + _hi) >>> 1;
+                    invokeAll(new Convert(_lo, mid), new Convert(mid, _hi));
+                    return;
+                }
+                MachineState state = _state.copy();
+                _orbit.seek(state, _base + _starts[_lo]);
+                int start = _lo * CHUNK;
+                int end = Math.min(_len, start + CHUNK);
+                state.convert(_in, _off + start, end - start,
+                              _out, _outOff + _starts[_lo]);
+            }
+
+            /** Range of chunks converted. */
+            private final int _lo, _hi;
+        }
+
+        /** Input characters. */
+        private final char[] _in;
+        /** Offset and length of the input within _in. */
+        private final int _off, _len;
+        /** Output characters. */
+        private final char[] _out;
+        /** Offset of the output within _out. */
+        private final int _outOff;
+        /** Number of chunks. */
+        private final int _chunks;
+        /** Output position of each chunk; _starts[_chunks] is the total. */
+        private final int[] _starts;
+        /** The machine's state, copied by each chunk. */
+        private final MachineState _state;
+        /** Orbit of the machine's rotor settings. */
+        private final RotorOrbit _orbit;
+        /** Offset of the machine when the job began. */
+        private final long _base;
+    }
+
+    /** Characters of input per chunk. */
+    static final int CHUNK = 1 << 16;
+
+    /** The machine whose state is used and advanced. */
+    private final Machine _machine;
+
+    /** Pool that runs the chunks. */
+    private final ForkJoinPool _pool;
+
+}
@@ -1,7 +1,8 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
-import java.util.ArrayList;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -14,48 +15,137 @@ class Permutation {
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace is ignored.  In the byte alphabet, the c's are each
+     *  written as two hexadecimal digits (see Alphabet.decode).  The
+     *  cycles are parsed once here into forward and inverse lookup
+     *  tables. */
     Permutation(String cycles, Alphabet alphabet) {
         this._alphabet = alphabet;
-        this._cycles = cycles;
-    }
-
-    /**
-     * It makes cycles by breaking it.
-     * @param cycle it takes in string of cycles.
-     * @return a it returns the arraylist.
-     */
-    public static ArrayList<String> makeCycle(String cycle) {
-        String [] copyArray;
-        ArrayList<String> a = new ArrayList<String>();
-        String copy = cycle;
-        copy = copy.trim();
-        if (copy.length() != 0) {
-            if (copy.contains(" ")) {
-                copy = copy.substring(1, copy.length() - 1);
-                copy = copy.replaceAll(" ", "");
-                copyArray = copy.split("\\)\\(");
+        int n = alphabet.size();
+        this._forward = new int[n];
+        this._inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            this._forward[i] = i;
+            this._inverse[i] = i;
+        }
+        this._fixedPoints = n;
+        parseCycles(cycles);
+    }
 
-            } else {
-                copy = copy.replaceAll("\\(", "");
-                copy = copy.replaceAll("\\)", "");
-                copyArray = new String [] {copy};
+    /** A permutation of ALPHABET that maps each index I to TABLE[I].
+     *  TABLE must have one entry per character of ALPHABET, and no two
+     *  entries may be equal.  TABLE is copied. */
+    Permutation(int[] table, Alphabet alphabet) {
+        this._alphabet = alphabet;
+        int n = alphabet.size();
+        if (table.length != n) {
+            throw error("permutation table has %d entries for %d characters",
+                        table.length, n);
+        }
+        this._forward = table.clone();
+        this._inverse = new int[n];
+        Arrays.fill(this._inverse, -1);
+        for (int i = 0; i < n; i++) {
+            int c = this._forward[i];
+            if (c < 0 || c >= n || this._inverse[c] >= 0) {
+                throw error("permutation table is not a permutation");
             }
-            for (int i = 0; i < copyArray.length; i++) {
-                a.add(copyArray[i]);
+            this._inverse[c] = i;
+            if (c == i) {
+                this._fixedPoints++;
+            }
+        }
+    }
+
+    /** A permutation of ALPHABET with tables FORWARD and INVERSE, which
+     *  are inverses of each other and are used, not copied. */
+    private Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        this._alphabet = alphabet;
+        this._forward = forward;
+        this._inverse = inverse;
+        for (int i = 0; i < forward.length; i++) {
+            if (forward[i] == i) {
+                this._fixedPoints++;
             }
         }
-        return a;
+    }
+
+    /** Add each cycle of CYCLES, written in cycle notation, to my tables. */
+    private void parseCycles(String cycles) {
+        StringBuilder cycle = null;
+        for (int i = 0; i < cycles.length(); i++) {
+            char ch = cycles.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            } else if (ch == '(') {
+                if (cycle != null) {
+                    throw error("nested cycle in %s", cycles);
+                }
+                cycle = new StringBuilder();
+            } else if (ch == ')') {
+                if (cycle == null) {
+                    throw error("unbalanced cycle in %s", cycles);
+                }
+                addCycle(_alphabet.decode(cycle.toString()));
+                cycle = null;
+            } else if (cycle == null) {
+                throw error("character %c outside of a cycle", ch);
+            } else {
+                cycle.append(ch);
+            }
+        }
+        if (cycle != null) {
+            throw error("unterminated cycle in %s", cycles);
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm.  Every character of CYCLE must be in my alphabet and
+     *  appear nowhere else in my cycles, nor twice in CYCLE. */
     private void addCycle(String cycle) {
-        this._cycles += cycle;
+        int first = -1, prev = -1;
+        for (int i = 0; i < cycle.length(); i++) {
+            char ch = cycle.charAt(i);
+            int c = this._alphabet.toInt(ch);
+            if (c < 0) {
+                throw error("character %c not in alphabet", ch);
+            }
+            if (cycle.lastIndexOf(ch, i - 1) >= 0) {
+                throw error("character %c appears twice in one cycle", ch);
+            }
+            if (this._forward[c] != c || this._inverse[c] != c) {
+                throw error("character %c appears in two cycles", ch);
+            }
+            if (prev < 0) {
+                first = c;
+            } else {
+                link(prev, c);
+            }
+            prev = c;
+        }
+        if (first >= 0 && first != prev) {
+            link(prev, first);
+        }
+    }
+
+    /** Make this permutation take FROM to TO, where both are currently
+     *  fixed points in the direction being changed. */
+    private void link(int from, int to) {
+        if (this._forward[from] == from && this._inverse[from] == from) {
+            this._fixedPoints--;
+        }
+        if (this._forward[to] == to && this._inverse[to] == to) {
+            this._fixedPoints--;
+        }
+        this._forward[from] = to;
+        this._inverse[to] = from;
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < size()) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -65,70 +155,147 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return this._forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int begin = this.wrap(p);
-        char beginPlace = this._alphabet.toChar(begin);
-        char placeAfter = permute(beginPlace);
-        int placeOut = this._alphabet.toInt(placeAfter);
-        return placeOut;
+        return this._forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int begin = this.wrap(c);
-        char beginPlace = this._alphabet.toChar(begin);
-        char placeAfter = invert(beginPlace);
-        int placeOut = this._alphabet.toInt(placeAfter);
-        return placeOut;
+        return this._inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
-     *  in ALPHABET, and converting the result to a character of ALPHABET. */
+     *  in ALPHABET, and converting the result to a character of ALPHABET.
+     *  Characters outside ALPHABET are returned unchanged. */
     char permute(char p) {
-        ArrayList<String> fake = makeCycle(this._cycles);
-        char finalchar = p;
-        if (this._cycles.equals("")) {
-            return finalchar;
-        } else {
-            for (String b : fake) {
-                if (b.indexOf(p) != -1) {
-                    if (b.indexOf(p) == b.length() - 1) {
-                        finalchar = b.charAt(0);
-                    } else {
-                        finalchar = b.charAt(b.indexOf(p) + 1);
-                    }
-
-                }
-            }
+        int index = this._alphabet.toInt(p);
+        if (index < 0) {
+            return p;
         }
-        return finalchar;
+        return this._alphabet.toChar(this._forward[index]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        ArrayList<String> fake = makeCycle(this._cycles);
-        char finalchar = c;
-        if (this._cycles.equals("")) {
-            return finalchar;
-        } else {
-            for (String b : fake) {
-                if (b.indexOf(c) != -1) {
-                    if (b.indexOf(c) == 0) {
-                        finalchar = b.charAt(b.length() - 1);
-                    } else {
-                        finalchar = b.charAt(b.indexOf(c) - 1);
-                    }
+        int index = this._alphabet.toInt(c);
+        if (index < 0) {
+            return c;
+        }
+        return this._alphabet.toChar(this._inverse[index]);
+    }
+
+    /** Return the composition of this permutation with OTHER, which must
+     *  be over an alphabet of the same size: the permutation that applies
+     *  OTHER and then me, taking I to permute(OTHER.permute(I)). */
+    Permutation compose(Permutation other) {
+        int n = size();
+        if (other.size() != n) {
+            throw error("cannot compose permutations of %d and %d "
+                        + "characters", n, other.size());
+        }
+        int[] forward = new int[n], inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            int c = this._forward[other._forward[i]];
+            forward[i] = c;
+            inverse[c] = i;
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return the inverse of this permutation. */
+    Permutation inverse() {
+        return new Permutation(_inverse, _forward, _alphabet);
+    }
 
+    /** Return this permutation applied K times, where K may be negative
+     *  or zero.  Each cycle is walked once, so this takes time linear in
+     *  my size whatever K is. */
+    Permutation power(int k) {
+        int n = size();
+        int[] forward = new int[n], inverse = new int[n];
+        int[] cycle = new int[n];
+        boolean[] seen = new boolean[n];
+        for (int start = 0; start < n; start++) {
+            if (seen[start]) {
+                continue;
+            }
+            int len = 0;
+            for (int c = start; !seen[c]; c = this._forward[c]) {
+                seen[c] = true;
+                cycle[len++] = c;
+            }
+            int step = k % len;
+            if (step < 0) {
+                step += len;
+            }
+            for (int j = 0; j < len; j++) {
+                int to = j + step < len ? j + step : j + step - len;
+                forward[cycle[j]] = cycle[to];
+                inverse[cycle[to]] = cycle[j];
+            }
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return the conjugate of this permutation by a shift of K: the
+     *  permutation that adds K modulo my size, applies me and then
+     *  subtracts K again.  Taking this permutation as a rotor's wiring,
+     *  this is the rotor's forward conversion at setting K, as
+     *  Rotor.convertForward computes it one character at a time. */
+    Permutation conjugate(int k) {
+        int n = size();
+        int shift = wrap(k);
+        int[] forward = new int[n], inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            int from = i + shift < n ? i + shift : i + shift - n;
+            int to = this._forward[from] - shift;
+            if (to < 0) {
+                to += n;
+            }
+            forward[i] = to;
+            inverse[to] = i;
+        }
+        return new Permutation(forward, inverse, _alphabet);
+    }
+
+    /** Return this permutation in cycle notation, as the constructor
+     *  reads it: each cycle of two or more characters, starting from its
+     *  character of least index, in order of those indices, separated by
+     *  spaces.  In the byte alphabet, characters are written as pairs of
+     *  hexadecimal digits separated by spaces. */
+    String cycles() {
+        int n = size();
+        boolean bytes = _alphabet.isBytes();
+        boolean[] seen = new boolean[n];
+        StringBuilder result = new StringBuilder();
+        for (int start = 0; start < n; start++) {
+            if (seen[start] || this._forward[start] == start) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int c = start; !seen[c]; c = this._forward[c]) {
+                seen[c] = true;
+                if (!bytes) {
+                    result.append(_alphabet.toChar(c));
+                } else {
+                    if (c != start) {
+                        result.append(' ');
+                    }
+                    result.append(String.format("%02x", c));
                 }
             }
+            result.append(')');
         }
-        return finalchar;
+        return result.toString();
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -139,18 +306,18 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        ArrayList<String> a = makeCycle(this._cycles);
-        for (String b: a) {
-            if (b.length() == 1) {
-                return false;
-            }
-        }
-        return true;
+        return this._fixedPoints == 0;
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** String of _cycles. */
-    private String _cycles;
+    /** Forward table: index I maps to _forward[I]. */
+    private final int[] _forward;
+
+    /** Inverse table: _inverse[_forward[I]] == I. */
+    private final int[] _inverse;
+
+    /** Number of indices that this permutation maps to themselves. */
+    private int _fixedPoints;
 }
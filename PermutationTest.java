@@ -22,6 +22,10 @@ public class PermutationTest {
     private Permutation perm;
     private String alpha = UPPER_STRING;
 
+    /** The cycles of naval rotor I. */
+    private static final String NAVAL_I =
+        "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)";
+
     /** Check that perm has an alphabet whose size is that of
      *  FROMALPHA and TOALPHA and that maps each character of
      *  FROMALPHA to the corresponding character of FROMALPHA, and
@@ -85,7 +89,7 @@ public class PermutationTest {
         assertEquals(2, perm.permute(50));
 
         Alphabet A = new Alphabet("ABCDEFGHIJK");
-        perm = new Permutation(l, A);
+        perm = new Permutation("(AEH) (BK) (CI) (DFG) (J)", A);
         assertEquals(4, perm.permute(0));
         assertEquals(3, perm.permute(6));
     }
@@ -99,15 +103,99 @@ public class PermutationTest {
         assertEquals(14, perm.invert(50));
 
         Alphabet A = new Alphabet("ABCDEFGHIJK");
-        perm = new Permutation(l, A);
+        perm = new Permutation("(AEH) (BK) (CI) (DFG) (J)", A);
         assertEquals(3, perm.invert(5));
         assertEquals(5, perm.invert(6));
     }
 
+    @Test
+    public void checkDerangement() {
+        perm = new Permutation("(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) "
+                               + "(MP) (RX) (SZ) (TV)", UPPER);
+        assertTrue(perm.derangement());
+        perm = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                               UPPER);
+        assertFalse(perm.derangement());
+        perm = new Permutation("", UPPER);
+        assertFalse(perm.derangement());
+    }
 
+    @Test
+    public void checkCompose() {
+        perm = new Permutation(NAVAL_I, UPPER);
+        Permutation swap = new Permutation("(AB)", UPPER);
+        Permutation both = perm.compose(swap);
+        assertEquals('K', both.permute('A'));
+        for (int i = 0; i < perm.size(); i += 1) {
+            assertEquals(perm.permute(swap.permute(i)), both.permute(i));
+            assertEquals(i, both.invert(both.permute(i)));
+            assertEquals(i, perm.compose(perm.inverse()).permute(i));
+            assertEquals(perm.invert(i), perm.inverse().permute(i));
+        }
+        assertFalse(perm.compose(perm.inverse()).derangement());
+    }
 
+    @Test
+    public void checkPower() {
+        perm = new Permutation(NAVAL_I, UPPER);
+        Permutation cube = perm.compose(perm).compose(perm);
+        for (int i = 0; i < perm.size(); i += 1) {
+            assertEquals(i, perm.power(0).permute(i));
+            assertEquals(perm.permute(i), perm.power(1).permute(i));
+            assertEquals(perm.invert(i), perm.power(-1).permute(i));
+            assertEquals(cube.permute(i), perm.power(3).permute(i));
+            assertEquals(cube.invert(i), perm.power(3).invert(i));
+            assertEquals(perm.power(-7).permute(i),
+                         perm.inverse().power(7).permute(i));
+        }
+        assertEquals('A', perm.power(10).permute('A'));
+        assertEquals('B', perm.power(4).permute('B'));
+        assertEquals('D', perm.power(3).permute('D'));
+    }
 
+    @Test
+    public void checkConjugate() {
+        perm = new Permutation(NAVAL_I, UPPER);
+        Rotor rotor = new MovingRotor("I", perm, "Q");
+        for (int k = 0; k < perm.size(); k += 1) {
+            rotor.set(k);
+            Permutation shifted = perm.conjugate(k);
+            for (int c = 0; c < perm.size(); c += 1) {
+                assertEquals(rotor.convertForward(c), shifted.permute(c));
+                assertEquals(rotor.convertBackward(c), shifted.invert(c));
+            }
+        }
+        assertEquals(perm.conjugate(25).cycles(),
+                     perm.conjugate(-1).cycles());
+        assertEquals(NAVAL_I.replace(" (S)", ""),
+                     perm.conjugate(0).cycles());
+    }
 
+    @Test
+    public void checkCycles() {
+        perm = new Permutation(NAVAL_I, UPPER);
+        assertEquals("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                     perm.cycles());
+        assertEquals(perm.cycles(),
+                     new Permutation(perm.cycles(), UPPER).cycles());
+        assertEquals("", new Permutation("", UPPER).cycles());
+        perm = new Permutation("(00 ff 10) (41 42)", Alphabet.bytes());
+        assertEquals("(00 ff 10) (41 42)", perm.cycles());
+        assertEquals(0x10, perm.permute(0xff));
+    }
 
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedCharacter() {
+        perm = new Permutation("(ABC) (CD)", UPPER);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatInCycle() {
+        perm = new Permutation("(AA)", UPPER);
+    }
 
+    @Test(expected = EnigmaException.class)
+    public void checkCharacterNotInAlphabet() {
+        perm = new Permutation("(AELTPHQXRU)", new Alphabet("ABCDEFGHIJK"));
+    }
 }
@@ -0,0 +1,208 @@
+package enigma;
+
+/** Converts the input of Main in three stages on three threads: a reader
+ *  that decodes parts of lines (see LineReader.nextPart), a cipher stage
+ *  that owns the machine and converts them in place, and a writer, on
+ *  the calling thread, that groups them into the output.  The stages pass
+ *  a fixed set of slots, each holding one part, around a loop of
+ *  RingBuffers (free slots to the reader, read ones to the cipher
+ *  stage, converted ones to the writer and back), so that nothing is
+ *  allocated per part and a stage that gets ahead waits for the others.
+ *  Reading, converting and writing thus overlap, and the output is
+ *  exactly that of MessageProcessor.process.
+ *
+ *  An error in any stage travels down the pipeline in place of the part
+ *  that caused it, so that everything before it is written first, and is
+ *  then thrown by run.
+ *  @author Jake Kim
+ */
+final class Pipeline {
+
+    /** A pipeline converting the lines of IN by PROCESSOR and writing them
+     *  to OUT, with SLOTS parts in flight at most. */
+    Pipeline(MessageProcessor processor, LineReader in, MessageWriter out,
+             int slots) {
+        if (slots < 2) {
+            throw EnigmaException.error("pipeline needs at least two slots");
+        }
+        _processor = processor;
+        _in = in;
+        _out = out;
+        _free = new RingBuffer<Slot>(slots);
+        _read = new RingBuffer<Slot>(slots);
+        _converted = new RingBuffer<Slot>(slots);
+        for (int i = 0; i < slots; i += 1) {
+            _free.put(new Slot());
+        }
+    }
+
+    /** A pipeline as above with SLOTS slots in flight at most. */
+    Pipeline(MessageProcessor processor, LineReader in, MessageWriter out) {
+        this(processor, in, out, SLOTS);
+    }
+
+    /** Convert all of my input, returning when it has all been written to
+     *  my output (which is not flushed), or throwing the first error. */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread cipher = new Thread(this::convert, "enigma-cipher");
+        reader.setDaemon(true);
+        cipher.setDaemon(true);
+        reader.start();
+        cipher.start();
+        try {
+            write();
+        } finally {
+            reader.interrupt();
+            cipher.interrupt();
+        }
+    }
+
+    /** The reader stage: fill free slots with parts of lines, reading
+     *  settings lines whole, until input ends. */
+    private void read() {
+        Slot slot = null;
+        try {
+            while (true) {
+                slot = _free.take();
+                if (!_in.nextPart()) {
+                    slot._last = true;
+                    _read.put(slot);
+                    return;
+                }
+                slot._settings = _in.startsLine() && _in.startsWith('*');
+                if (slot._settings) {
+                    _in.completeLine();
+                }
+                slot._length = _in.length();
+                slot._endsLine = _in.endsLine();
+                slot._chars = _in.exchange(slot._chars);
+                _read.put(slot);
+                slot = null;
+            }
+        } catch (RuntimeException | Error excp) {
+            fail(slot, excp, _read);
+        }
+    }
+
+    /** The cipher stage: apply settings lines to the machine and convert
+     *  the other parts in place. */
+    private void convert() {
+        Slot slot = null;
+        boolean first = true;
+        try {
+            while (true) {
+                slot = _read.take();
+                if (slot._last || slot._error != null) {
+                    if (first && slot._error == null) {
+                        throw new EnigmaException("Bad input");
+                    }
+                    _processor.endSection();
+                    _converted.put(slot);
+                    return;
+                }
+                if (first && !slot._settings) {
+                    throw new EnigmaException("Bad input");
+                }
+                first = false;
+                if (slot._settings) {
+                    _processor.setUp(new String(slot._chars, 0,
+                                                slot._length));
+                } else {
+                    slot._length = _processor.convert(slot._chars,
+                                                      slot._length);
+                }
+                _converted.put(slot);
+                slot = null;
+            }
+        } catch (RuntimeException | Error excp) {
+            fail(slot, excp, _converted);
+        }
+    }
+
+    /** The writer stage: write converted parts until the last, then
+     *  throw the error that ended the pipeline, if any. */
+    private void write() {
+        while (true) {
+            Slot slot = _converted.take();
+            if (slot._error instanceof Error) {
+                throw (Error) slot._error;
+            } else if (slot._error != null) {
+                throw (RuntimeException) slot._error;
+            } else if (slot._last) {
+                return;
+            }
+            if (!slot._settings) {
+                _out.writePart(slot._chars, 0, slot._length);
+                if (slot._endsLine) {
+                    _out.endLine();
+                }
+            }
+            slot._settings = false;
+            _free.put(slot);
+        }
+    }
+
+    /** Send ERROR on to NEXT in SLOT, or in a new slot if SLOT is null,
+     *  unless this thread was interrupted, in which case the pipeline is
+     *  being abandoned. */
+    private void fail(Slot slot, Throwable error, RingBuffer<Slot> next) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        if (slot == null) {
+            slot = new Slot();
+        }
+        slot._error = error;
+        try {
+            next.put(slot);
+        } catch (EnigmaException excp) {
+            /* Interrupted: the writer has already stopped. */
+        }
+    }
+
+    /** One part of a line, with what the stages need to know of it. */
+    private static final class Slot {
+
+        /** The part, in its first _length characters. */
+        private char[] _chars = new char[LineReader.PART_SIZE];
+
+        /** Number of characters in _chars. */
+        private int _length;
+
+        /** True iff the part ends its line. */
+        private boolean _endsLine;
+
+        /** True iff the part is a whole settings line. */
+        private boolean _settings;
+
+        /** True iff input ended before this slot. */
+        private boolean _last;
+
+        /** The error that ended the pipeline here (a RuntimeException or
+         *  an Error), or null. */
+        private Throwable _error;
+    }
+
+    /** Default number of slots in flight. */
+    static final int SLOTS = 8;
+
+    /** Applies settings lines and owns the machine. */
+    private final MessageProcessor _processor;
+
+    /** Source of lines. */
+    private final LineReader _in;
+
+    /** Destination of grouped output. */
+    private final MessageWriter _out;
+
+    /** Slots ready to be read into. */
+    private final RingBuffer<Slot> _free;
+
+    /** Slots read, to be converted. */
+    private final RingBuffer<Slot> _read;
+
+    /** Slots converted, to be written. */
+    private final RingBuffer<Slot> _converted;
+
+}
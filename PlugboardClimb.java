@@ -0,0 +1,312 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A hill-climb on the plugboard of a machine with fixed rotors and
+ *  starting setting, toward the plugboard under which a ciphertext
+ *  deciphers to the text an NgramScorer rates highest.
+ *
+ *  The scrambler (the rotors without the plugboard) at each position of
+ *  the ciphertext is computed once, so that deciphering under plugboard
+ *  P is P(S(P(c))) by table lookups.  A move changes the plugs of at most
+ *  four letters, and so changes only the positions whose cipher letter,
+ *  or whose letter out of the scrambler, is among them.  Positions are
+ *  kept in lists by both letters, so a move rescores just the windows
+ *  that overlap those positions, allocating nothing.
+ *  @author Jake Kim
+ */
+final class PlugboardClimb {
+
+    /** A climb for CIPHER, the indices of a ciphertext, deciphered by
+     *  SPEC's rotors starting at settings POSITIONS, under SCORER. */
+    PlugboardClimb(MachineSpec spec, int[] positions, int[] cipher,
+                   NgramScorer scorer) {
+        int size = spec.size(), n = cipher.length;
+        _size = size;
+        _scorer = scorer;
+        _cipher = cipher;
+        _scrambler = new int[n * size];
+        int[] p = positions.clone();
+        for (int i = 0; i < n; i += 1) {
+            spec.step(p);
+            for (int c = 0; c < size; c += 1) {
+                _scrambler[i * size + c] = spec.reflect(p, p.length, c);
+            }
+        }
+        _cipherStart = new int[size + 1];
+        for (int c : cipher) {
+            _cipherStart[c + 1] += 1;
+        }
+        for (int c = 0; c < size; c += 1) {
+            _cipherStart[c + 1] += _cipherStart[c];
+        }
+        _byCipher = new int[n];
+        int[] next = Arrays.copyOf(_cipherStart, size);
+        for (int i = 0; i < n; i += 1) {
+            _byCipher[next[cipher[i]]++] = i;
+        }
+        _plug = new int[size];
+        _trial = new int[size];
+        _changed = new boolean[size];
+        _middle = new int[n];
+        _plain = new int[n];
+        _head = new int[size];
+        _next = new int[n];
+        _prev = new int[n];
+        _affected = new int[n];
+        _newMiddle = new int[n];
+        _oldPlain = new int[n];
+        _windows = new int[n];
+        _positionMark = new int[n];
+        _windowMark = new int[n];
+        reset();
+    }
+
+    /** Clear the plugboard and decipher the whole text under it. */
+    void reset() {
+        for (int c = 0; c < _size; c += 1) {
+            _plug[c] = c;
+        }
+        Arrays.fill(_head, -1);
+        for (int i = 0; i < _cipher.length; i += 1) {
+            _middle[i] = _scrambler[i * _size + _cipher[i]];
+            _plain[i] = _middle[i];
+            link(i);
+        }
+        _score = _scorer.score(_plain, 0, _plain.length);
+    }
+
+    /** Climb until no single move improves the score, and return the
+     *  final score.  A move on letters A and B removes their plugs and
+     *  then, unless they were plugged to each other, plugs them
+     *  together. */
+    double climb() {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    improved |= tryMove(a, b);
+                }
+            }
+        }
+        return _score;
+    }
+
+    /** Make the move on letters A and B if it improves the score, and
+     *  return true iff it does. */
+    private boolean tryMove(int a, int b) {
+        int[] plug = _plug, trial = _trial;
+        System.arraycopy(plug, 0, trial, 0, _size);
+        int pa = plug[a], pb = plug[b];
+        trial[pa] = pa;
+        trial[pb] = pb;
+        trial[a] = a;
+        trial[b] = b;
+        if (pa != b) {
+            trial[a] = b;
+            trial[b] = a;
+        }
+        _changed[a] = _changed[b] = _changed[pa] = _changed[pb] = true;
+        _mark += 1;
+        int count = collect(a, 0);
+        count = collect(b, count);
+        count = collect(pa, count);
+        count = collect(pb, count);
+        _changed[a] = _changed[b] = _changed[pa] = _changed[pb] = false;
+        double delta = rescore(count);
+        if (delta <= 0) {
+            for (int k = 0; k < count; k += 1) {
+                _plain[_affected[k]] = _oldPlain[k];
+            }
+            return false;
+        }
+        for (int k = 0; k < count; k += 1) {
+            int i = _affected[k];
+            if (_newMiddle[k] != _middle[i]) {
+                unlink(i);
+                _middle[i] = _newMiddle[k];
+                link(i);
+            }
+        }
+        System.arraycopy(trial, 0, plug, 0, _size);
+        _score += delta;
+        return true;
+    }
+
+    /** Return the increase in score from deciphering the COUNT affected
+     *  positions under _trial, leaving them so deciphered and their old
+     *  letters in _oldPlain. */
+    private double rescore(int count) {
+        int order = _scorer.order(), last = _plain.length - order;
+        int windows = 0;
+        _mark += 1;
+        for (int k = 0; k < count; k += 1) {
+            int i = _affected[k];
+            for (int j = Math.max(0, i - order + 1); j <= Math.min(i, last);
+                 j += 1) {
+                if (_windowMark[j] != _mark) {
+                    _windowMark[j] = _mark;
+                    _windows[windows++] = j;
+                }
+            }
+        }
+        double before = 0, after = 0;
+        for (int w = 0; w < windows; w += 1) {
+            before += _scorer.window(_plain, _windows[w]);
+        }
+        for (int k = 0; k < count; k += 1) {
+            int i = _affected[k];
+            _oldPlain[k] = _plain[i];
+            _plain[i] = _trial[_newMiddle[k]];
+        }
+        for (int w = 0; w < windows; w += 1) {
+            after += _scorer.window(_plain, _windows[w]);
+        }
+        return after - before;
+    }
+
+    /** Add to the first COUNT entries of _affected the positions whose
+     *  cipher letter or letter out of the scrambler is C and whose
+     *  decipherment or letter out of the scrambler a move to _trial,
+     *  changing the plugs of the letters marked in _changed, would
+     *  change.  Put their letters out of the
+     *  scrambler under _trial in _newMiddle, and return the new count. */
+    private int collect(int c, int count) {
+        for (int k = _cipherStart[c]; k < _cipherStart[c + 1]; k += 1) {
+            count = consider(_byCipher[k], count);
+        }
+        for (int i = _head[c]; i >= 0; i = _next[i]) {
+            count = consider(i, count);
+        }
+        return count;
+    }
+
+    /** Add position I to the first COUNT entries of _affected as for
+     *  collect, if it belongs there and is not there already, and return
+     *  the new count. */
+    private int consider(int i, int count) {
+        if (_positionMark[i] == _mark) {
+            return count;
+        }
+        _positionMark[i] = _mark;
+        int c = _cipher[i], middle = _middle[i];
+        if (_changed[c]) {
+            middle = _scrambler[i * _size + _trial[c]];
+        }
+        if (middle == _middle[i] && _trial[middle] == _plain[i]) {
+            return count;
+        }
+        _affected[count] = i;
+        _newMiddle[count] = middle;
+        return count + 1;
+    }
+
+    /** Return the current score. */
+    double score() {
+        return _score;
+    }
+
+    /** Return the current plugboard, as a table of indices. */
+    int[] plugboard() {
+        return _plug.clone();
+    }
+
+    /** Return the current decipherment, as indices. */
+    int[] plaintext() {
+        return _plain.clone();
+    }
+
+    /** Add position I to the list of those whose letter out of the
+     *  scrambler is _middle[I]. */
+    private void link(int i) {
+        int m = _middle[i];
+        _prev[i] = -1;
+        _next[i] = _head[m];
+        if (_head[m] >= 0) {
+            _prev[_head[m]] = i;
+        }
+        _head[m] = i;
+    }
+
+    /** Remove position I from its list. */
+    private void unlink(int i) {
+        if (_prev[i] >= 0) {
+            _next[_prev[i]] = _next[i];
+        } else {
+            _head[_middle[i]] = _next[i];
+        }
+        if (_next[i] >= 0) {
+            _prev[_next[i]] = _prev[i];
+        }
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Rates decipherments. */
+    private final NgramScorer _scorer;
+
+    /** The ciphertext. */
+    private final int[] _cipher;
+
+    /** The scrambler at position I maps C to _scrambler[I * size + C]. */
+    private final int[] _scrambler;
+
+    /** Positions whose cipher letter is C are _byCipher[_cipherStart[C]]
+     *  up to _byCipher[_cipherStart[C + 1]]. */
+    private final int[] _cipherStart;
+
+    /** Positions, by cipher letter. */
+    private final int[] _byCipher;
+
+    /** The plugboard: letter C is plugged to _plug[C]. */
+    private final int[] _plug;
+
+    /** The plugboard a move would make. */
+    private final int[] _trial;
+
+    /** Letters whose plugs a move changes. */
+    private final boolean[] _changed;
+
+    /** Letter out of the scrambler at each position. */
+    private final int[] _middle;
+
+    /** Decipherment under _plug. */
+    private final int[] _plain;
+
+    /** First position in the list of each letter out of the scrambler, or
+     *  -1. */
+    private final int[] _head;
+
+    /** Next position in the same list, or -1. */
+    private final int[] _next;
+
+    /** Previous position in the same list, or -1. */
+    private final int[] _prev;
+
+    /** Positions a move affects. */
+    private final int[] _affected;
+
+    /** Letters out of the scrambler at _affected under _trial. */
+    private final int[] _newMiddle;
+
+    /** Letters deciphered at _affected before a move. */
+    private final int[] _oldPlain;
+
+    /** Windows a move affects. */
+    private final int[] _windows;
+
+    /** Value of _mark when each position was last gathered. */
+    private final int[] _positionMark;
+
+    /** Value of _mark when each window was last gathered. */
+    private final int[] _windowMark;
+
+    /** Stamp distinguishing gatherings. */
+    private int _mark;
+
+    /** Score of _plain. */
+    private double _score;
+
+}
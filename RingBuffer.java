@@ -0,0 +1,76 @@
+package enigma;
+
+/** A bounded first-in, first-out queue between threads, kept in a fixed
+ *  array allocated once.  put waits while the ring is full and take while
+ *  it is empty, so a fast producer is held back to the pace of its
+ *  consumer.  Waiting is interruptible; an interrupted put or take throws
+ *  an EnigmaException and leaves the interrupt status set.
+ *  @author Jake Kim
+ */
+final class RingBuffer<T> {
+
+    /** An empty ring holding at most CAPACITY items. */
+    RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw EnigmaException.error("ring must hold at least one item");
+        }
+        _items = new Object[capacity];
+    }
+
+    /** Add ITEM at the tail, waiting for room if need be. */
+    synchronized void put(T item) {
+        while (_count == _items.length) {
+            await();
+        }
+        int tail = _head + _count;
+        _items[tail < _items.length ? tail : tail - _items.length] = item;
+        _count += 1;
+        notifyAll();
+    }
+
+    /** Remove and return the item at the head, waiting for one if need
+     *  be. */
+    @SuppressWarnings("unchecked")
+    synchronized T take() {
+        while (_count == 0) {
+            await();
+        }
+        T item = (T) _items[_head];
+        _items[_head] = null;
+        _head = _head + 1 == _items.length ? 0 : _head + 1;
+        _count -= 1;
+        notifyAll();
+        return item;
+    }
+
+    /** Return the number of items held. */
+    synchronized int size() {
+        return _count;
+    }
+
+    /** Return the most items I hold. */
+    int capacity() {
+        return _items.length;
+    }
+
+    /** Wait to be notified, turning an interrupt into an
+     *  EnigmaException. */
+    private void await() {
+        try {
+            wait();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw EnigmaException.error("interrupted");
+        }
+    }
+
+    /** Items, the first at _head, wrapping around. */
+    private final Object[] _items;
+
+    /** Index of the first item. */
+    private int _head;
+
+    /** Number of items held. */
+    private int _count;
+
+}
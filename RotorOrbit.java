@@ -0,0 +1,358 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The sequence of rotor settings that a machine state passes through
+ *  as it steps, starting from a fixed origin, worked out slot by slot
+ *  from the stepping rules rather than by stepping.  A rotor moves only
+ *  when the rotor to its right leaves one of its notches, or when it
+ *  leaves one of its own (the double step), so the times at which each
+ *  rotor moves follow from the times at which its right-hand neighbour
+ *  leaves a notch, and from its own notches alone.
+ *
+ *  The rotors from any slot rightward form a smaller machine whose
+ *  settings run through a tail and then repeat with some period.  For
+ *  the rightmost rotor, the period is the alphabet size.  For each rotor
+ *  to its left, its setting at the start of each period of the rotors to
+ *  its right is a function of its setting at the start of the one before,
+ *  so it repeats within size + 1 of those periods.  The times at which
+ *  each rotor moves are kept for its tail and one period, and the setting
+ *  at any offset is then found by reducing the offset by the period and
+ *  counting moves with a binary search, slot by slot, in time logarithmic
+ *  in the number of moves kept.
+ *
+ *  The moves kept are about one turn of each rotor for rotors with few
+ *  notches, but rotors with many notches can need far more.  Past
+ *  MAX_MOVES moves in all, the orbit is not recorded and seeking steps
+ *  one keypress at a time, from the current settings when seeking
+ *  forward.
+ *  @author Jake Kim
+ */
+final class RotorOrbit {
+
+    /** The orbit of ORIGIN's rotor settings. */
+    RotorOrbit(MachineState origin) {
+        _slots = origin.numRotors();
+        _start = new int[_slots];
+        origin.savePositions(_start, 0);
+        MachineSpec spec = origin.spec();
+        Slot[] slots = new Slot[_slots];
+        Slot driver = Slot.everyKeypress();
+        long budget = MAX_MOVES;
+        for (int k = _slots - 1; k >= 0; k--) {
+            slots[k] = Slot.follow(spec, k, _start[k], driver, budget);
+            if (slots[k] == null) {
+                slots = null;
+                break;
+            }
+            budget -= slots[k].kept();
+            driver = slots[k];
+        }
+        _orbit = slots;
+    }
+
+    /** Set the rotors of TARGET, which must share my origin's spec and be
+     *  at the settings my origin reaches after TARGET's offset, to the
+     *  settings my origin reaches after OFFSET keypresses, and set
+     *  TARGET's offset to OFFSET.  If the orbit was not recorded, TARGET
+     *  steps on from where it is, or from my origin if OFFSET is behind
+     *  it, one step per keypress.  Several threads may seek through one
+     *  orbit at once. */
+    void seek(MachineState target, long offset) {
+        if (offset < 0) {
+            throw EnigmaException.error("negative offset %d", offset);
+        }
+        if (_orbit != null) {
+            int[] positions = new int[_slots];
+            for (int k = 0; k < _slots; k++) {
+                positions[k] = _orbit[k].position(offset);
+            }
+            target.loadPositions(positions, 0);
+        } else {
+            long index = offset;
+            if (target.offset() <= offset) {
+                index -= target.offset();
+            } else {
+                target.loadPositions(_start, 0);
+            }
+            for (long i = 0; i < index; i++) {
+                target.step();
+            }
+        }
+        target.setOffset(offset);
+    }
+
+    /** Return true iff the orbit is recorded, so that seek takes a
+     *  bounded number of steps for any offset. */
+    boolean recorded() {
+        return _orbit != null;
+    }
+
+    /** The moves of the rotor in one slot, and the times at which it
+     *  leaves a notch with a rotor to its left that can rotate, over the
+     *  tail and first period of the rotors from that slot rightward.
+     *  Times count keypresses from my origin, and an event at time T
+     *  happens during the keypress that takes offset T to T + 1. */
+    private static final class Slot {
+
+        /** A slot whose rotor, of SIZE settings, starts at setting START,
+         *  moves at the times in MOVES, leaves a notch at the times in
+         *  EVENTS, and whose slots rightward repeat with PERIOD after
+         *  TAIL, or never within the range of a long if PERIOD is 0. */
+        private Slot(int size, int start, long[] moves, long[] events,
+                     long tail, long period) {
+            _size = size;
+            _start = start;
+            _moves = moves;
+            _events = events;
+            _tail = tail;
+            _period = period;
+            int n = 0;
+            while (n < events.length && events[n] < tail) {
+                n += 1;
+            }
+            _tailEvents = n;
+        }
+
+        /** Return a slot whose events happen at every keypress, which
+         *  drives the rightmost rotor. */
+        static Slot everyKeypress() {
+            return new Slot(1, 0, new long[0], new long[] { 0 }, 0, 1);
+        }
+
+        /** Return slot K of SPEC, whose rotor starts at setting START,
+         *  driven by the events of DRIVER, the slot to its right, or null
+         *  if it would keep more than BUDGET moves. */
+        static Slot follow(MachineSpec spec, int k, int start, Slot driver,
+                           long budget) {
+            if (!spec.rotates(k)) {
+                return new Slot(spec.size(), start, new long[0], new long[0],
+                                0, 1);
+            }
+            Walk walk = new Walk(spec, k, start, driver, budget);
+            if (!walk.run(driver._tail)) {
+                return null;
+            }
+            long tail, period;
+            if (driver._period == 0) {
+                if (!walk.run(NEVER)) {
+                    return null;
+                }
+                tail = NEVER;
+                period = 0;
+            } else {
+                int[] seen = new int[spec.size()];
+                Arrays.fill(seen, -1);
+                long boundary = driver._tail;
+                for (int j = 0; true; j += 1) {
+                    if (seen[walk._position] >= 0) {
+                        int mu = seen[walk._position];
+                        tail = driver._tail + mu * driver._period;
+                        period = (j - mu) * driver._period;
+                        break;
+                    }
+                    seen[walk._position] = j;
+                    if (boundary > NEVER - driver._period) {
+                        if (!walk.run(NEVER)) {
+                            return null;
+                        }
+                        tail = NEVER;
+                        period = 0;
+                        break;
+                    }
+                    boundary += driver._period;
+                    if (!walk.run(boundary)) {
+                        return null;
+                    }
+                }
+            }
+            return new Slot(spec.size(), start, walk._moves.toArray(),
+                            walk._events.toArray(), tail, period);
+        }
+
+        /** Return the time of my event number I, or NEVER if there is
+         *  none before NEVER. */
+        long event(long i) {
+            if (i < _events.length) {
+                return _events[(int) i];
+            }
+            int perPeriod = _events.length - _tailEvents;
+            if (_period == 0 || perPeriod == 0) {
+                return NEVER;
+            }
+            long cycles = (i - _tailEvents) / perPeriod;
+            long time = _events[_tailEvents
+                                + (int) ((i - _tailEvents) % perPeriod)];
+            if (cycles > (NEVER - time) / _period) {
+                return NEVER;
+            }
+            return time + cycles * _period;
+        }
+
+        /** Return my rotor's setting after OFFSET keypresses. */
+        int position(long offset) {
+            if (_period != 0 && offset - _tail >= _period) {
+                offset = _tail + (offset - _tail) % _period;
+            }
+            int moves = Arrays.binarySearch(_moves, offset);
+            moves = moves < 0 ? -moves - 1 : moves;
+            return (int) ((_start + (long) moves) % _size);
+        }
+
+        /** Return the number of moves and events I keep. */
+        long kept() {
+            return _moves.length + _events.length;
+        }
+
+        /** Number of settings of my rotor. */
+        private final int _size;
+
+        /** My rotor's setting at offset 0. */
+        private final int _start;
+
+        /** Times at which my rotor moves, in increasing order. */
+        private final long[] _moves;
+
+        /** Times at which my rotor leaves a notch with a rotating rotor
+         *  to its left, in increasing order. */
+        private final long[] _events;
+
+        /** Offset at which the slots from mine rightward begin to
+         *  repeat. */
+        private final long _tail;
+
+        /** Period with which they repeat, or 0 if they do not within the
+         *  range of a long. */
+        private final long _period;
+
+        /** Number of _events before _tail. */
+        private final int _tailEvents;
+    }
+
+    /** The moves of one rotor, worked out in order of time from the
+     *  events of the slot to its right. */
+    private static final class Walk {
+
+        /** A walk of the rotor in slot K of SPEC from setting START,
+         *  driven by DRIVER, keeping at most BUDGET moves and events. */
+        Walk(MachineSpec spec, int k, int start, Slot driver, long budget) {
+            _spec = spec;
+            _slot = k;
+            _pushes = k > 0 && spec.rotates(k - 1);
+            _driver = driver;
+            _budget = budget;
+            _position = start;
+            _pending = atNotch() ? 0 : NEVER;
+        }
+
+        /** Make every move before time END.  Return false if that would
+         *  keep more moves and events than my budget allows. */
+        boolean run(long end) {
+            long next = _driver.event(_next);
+            while (true) {
+                long time = Math.min(next, _pending);
+                if (time >= end) {
+                    return true;
+                }
+                if (_moves.size() + _events.size() >= _budget) {
+                    return false;
+                }
+                _moves.add(time);
+                if (atNotch()) {
+                    _events.add(time);
+                }
+                _position = _position + 1 == _spec.size() ? 0 : _position + 1;
+                if (next == time) {
+                    _next += 1;
+                    next = _driver.event(_next);
+                }
+                _pending = atNotch() ? time + 1 : NEVER;
+            }
+        }
+
+        /** Return true iff my rotor is at a notch that pushes the rotor to
+         *  its left, and so moves itself at the next keypress. */
+        private boolean atNotch() {
+            return _pushes && _spec.atNotch(_slot, _position);
+        }
+
+        /** The spec of the rotor walked. */
+        private final MachineSpec _spec;
+
+        /** The slot of the rotor walked. */
+        private final int _slot;
+
+        /** True iff the rotor to the left of mine rotates. */
+        private final boolean _pushes;
+
+        /** The slot whose events move my rotor. */
+        private final Slot _driver;
+
+        /** Most moves and events kept. */
+        private final long _budget;
+
+        /** Setting of my rotor after the moves so far. */
+        private int _position;
+
+        /** Time at which my rotor next moves by its own notch, or NEVER. */
+        private long _pending;
+
+        /** Number of the driver's next event. */
+        private long _next;
+
+        /** Times of the moves so far. */
+        private final Times _moves = new Times();
+
+        /** Times of the events so far. */
+        private final Times _events = new Times();
+    }
+
+    /** A growing list of times. */
+    private static final class Times {
+
+        /** Add TIME at the end. */
+        void add(long time) {
+            if (_size == _times.length) {
+                _times = Arrays.copyOf(_times, 2 * _size);
+            }
+            _times[_size] = time;
+            _size += 1;
+        }
+
+        /** Return the number of times added. */
+        int size() {
+            return _size;
+        }
+
+        /** Return the times added, in an array of their own. */
+        long[] toArray() {
+            return Arrays.copyOf(_times, _size);
+        }
+
+        /** The times added, followed by unused room. */
+        private long[] _times = new long[INITIAL_TIMES];
+
+        /** Number of times added. */
+        private int _size;
+    }
+
+    /** Offset beyond every offset sought: no event happens at or after
+     *  it. */
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /** Most moves and events kept for one orbit. */
+    static final long MAX_MOVES = 1 << 20;
+
+    /** Initial room in a list of times. */
+    private static final int INITIAL_TIMES = 64;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** Rotor settings of my origin. */
+    private final int[] _start;
+
+    /** The slots of the orbit, or null if it is not recorded. */
+    private final Slot[] _orbit;
+
+}
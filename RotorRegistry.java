@@ -0,0 +1,60 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable index of available rotors by name, ignoring case.  Names
+ *  are normalized once, when the registry is built, so that looking a
+ *  rotor up is a single hash probe.  A registry may be shared by any
+ *  number of machines and threads.
+ *  @author Jake Kim
+ */
+final class RotorRegistry {
+
+    /** A registry of ROTORS, whose names must differ other than in case. */
+    RotorRegistry(Collection<Rotor> rotors) {
+        _rotors = rotors.toArray(new Rotor[rotors.size()]);
+        _index = new HashMap<String, Integer>(2 * _rotors.length);
+        for (int i = 0; i < _rotors.length; i++) {
+            String key = normalize(_rotors[i].name());
+            if (_index.put(key, i) != null) {
+                throw error("duplicate rotor name %s", _rotors[i].name());
+            }
+        }
+    }
+
+    /** Return the number of rotors registered. */
+    int size() {
+        return _rotors.length;
+    }
+
+    /** Return the number of the rotor named NAME, in any case, or -1 if
+     *  there is none.  Rotors are numbered from 0 to size() - 1. */
+    int find(String name) {
+        Integer i = _index.get(name);
+        if (i == null) {
+            i = _index.get(normalize(name));
+        }
+        return i == null ? -1 : i;
+    }
+
+    /** Return rotor number I. */
+    Rotor get(int i) {
+        return _rotors[i];
+    }
+
+    /** Return NAME in the case used as a key. */
+    private static String normalize(String name) {
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    /** Registered rotors, by number. */
+    private final Rotor[] _rotors;
+
+    /** Number of each rotor, by normalized name. */
+    private final HashMap<String, Integer> _index;
+
+}
@@ -0,0 +1,188 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running Enigma service.  The configuration is read once; each
+ *  connection then sends input as Main reads it (a "*" settings line and
+ *  message lines, any number of times) and receives the converted
+ *  messages as Main prints them, flushed whenever the server has caught
+ *  up with what the client has sent.  Each connection runs on a thread of
+ *  its own with a machine of its own, all built from the one
+ *  configuration.  An error ends its connection with an "Error: " line.
+ *  @author Jake Kim
+ */
+final class Server implements Closeable {
+
+    /** A server for machines built from CONFIG, listening on ADDRESS. */
+    Server(Configuration config, SocketAddress address) {
+        _config = config;
+        _address = address;
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                removeStaleSocket(((UnixDomainSocketAddress) address)
+                                  .getPath());
+                _listener =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                _listener = ServerSocketChannel.open();
+            }
+            _listener.bind(address);
+        } catch (IOException excp) {
+            throw error("could not listen on %s: %s", address,
+                        excp.getMessage());
+        }
+        _workers = newExecutor();
+    }
+
+    /** Return the address denoted by SPEC: a port number on the loopback
+     *  interface if it is all digits, and otherwise the path of a Unix
+     *  domain socket. */
+    static SocketAddress parseAddress(String spec) {
+        if (!spec.isEmpty() && spec.chars().allMatch(Character::isDigit)) {
+            try {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                             Integer.parseInt(spec));
+            } catch (IllegalArgumentException excp) {
+                throw error("bad port %s", spec);
+            }
+        }
+        try {
+            return UnixDomainSocketAddress.of(spec);
+        } catch (IllegalArgumentException excp) {
+            throw error("bad socket path %s", spec);
+        }
+    }
+
+    /** Return the address I am listening on. */
+    SocketAddress address() {
+        try {
+            return _listener.getLocalAddress();
+        } catch (IOException excp) {
+            return _address;
+        }
+    }
+
+    /** Accept and handle connections until I am closed. */
+    void serve() {
+        try {
+            while (true) {
+                final SocketChannel client = _listener.accept();
+                _workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(client);
+                    }
+                });
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            throw error("could not accept connection: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Process the input from CLIENT, send back the results, and close
+     *  it.  Any error, expected or not, is sent back too. */
+    private void handle(SocketChannel client) {
+        Charset charset = Charset.defaultCharset();
+        MessageWriter out =
+            new MessageWriter(Channels.newWriter(client, charset),
+                              CONNECTION_BUFFER);
+        try (SocketChannel channel = client) {
+            try {
+                LineReader in = new LineReader(channel, charset);
+                new MessageProcessor(_config).process(in, out, true);
+            } catch (EnigmaException excp) {
+                out.write(String.format("Error: %s%n", excp.getMessage()));
+            } catch (RuntimeException excp) {
+                out.write(String.format("Error: %s%n", excp));
+            }
+            out.flush();
+        } catch (EnigmaException | IOException excp) {
+            /* The client has gone; there is no one left to tell. */
+            return;
+        }
+    }
+
+    /** Stop accepting connections, abandoning any still in progress. */
+    @Override
+    public void close() {
+        try {
+            _listener.close();
+            if (_address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) _address)
+                                     .getPath());
+            }
+        } catch (IOException excp) {
+            throw error("could not close %s: %s", _address,
+                        excp.getMessage());
+        } finally {
+            _workers.shutdownNow();
+        }
+    }
+
+    /** Remove any socket left at PATH by a server that did not close,
+     *  but not one that a server is still listening on. */
+    private static void removeStaleSocket(Path path) throws IOException {
+        if (!Files.exists(path) || Files.isRegularFile(path)
+            || Files.isDirectory(path)) {
+            return;
+        }
+        try (SocketChannel probe =
+             SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+            throw new BindException("address in use");
+        } catch (ConnectException excp) {
+            Files.delete(path);
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread when
+     *  the platform has them, and otherwise on a pooled platform
+     *  thread. */
+    private static ExecutorService newExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Output buffer size for one connection. */
+    private static final int CONNECTION_BUFFER = 1 << 13;
+
+    /** The configuration all my machines are built from. */
+    private final Configuration _config;
+
+    /** The address I was asked to listen on. */
+    private final SocketAddress _address;
+
+    /** Accepts connections. */
+    private final ServerSocketChannel _listener;
+
+    /** Runs the handler of each connection. */
+    private final ExecutorService _workers;
+
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded map from settings lines to their CompiledSettings, which
+ *  forgets the least recently used line when full and counts its hits,
+ *  misses and evictions.  Lines are normalized by dropping trailing
+ *  whitespace, which does not change how they are read.  One cache may be
+ *  shared by the machines of any number of threads.
+ *  @author Jake Kim
+ */
+final class SettingsCache {
+
+    /** A cache holding at most CAPACITY settings. */
+    SettingsCache(int capacity) {
+        if (capacity < 1) {
+            throw EnigmaException.error("settings cache must hold at least "
+                                        + "one line");
+        }
+        _capacity = capacity;
+        _settings =
+            new LinkedHashMap<String, CompiledSettings>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,
+                                                    CompiledSettings> e) {
+                    if (size() > _capacity) {
+                        _evictions += 1;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    }
+
+    /** Return the settings of LINE, or null (counting a miss) if I do not
+     *  hold them. */
+    synchronized CompiledSettings get(String line) {
+        CompiledSettings settings = _settings.get(normalize(line));
+        if (settings == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return settings;
+    }
+
+    /** Record SETTINGS as those of LINE. */
+    synchronized void put(String line, CompiledSettings settings) {
+        _settings.put(normalize(line), settings);
+    }
+
+    /** Return the number of lines I hold. */
+    synchronized int size() {
+        return _settings.size();
+    }
+
+    /** Return my capacity. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of lookups that found their settings. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of lines forgotten to make room for others. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Return my counts, for printing. */
+    @Override
+    public synchronized String toString() {
+        return String.format("settings cache: %d/%d lines, %d hits, "
+                             + "%d misses, %d evictions", _settings.size(),
+                             _capacity, _hits, _misses, _evictions);
+    }
+
+    /** Return LINE without trailing whitespace. */
+    private static String normalize(String line) {
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end -= 1;
+        }
+        return line.substring(0, end);
+    }
+
+    /** Most lines held. */
+    private final int _capacity;
+
+    /** Settings by normalized line, least recently used first. */
+    private final LinkedHashMap<String, CompiledSettings> _settings;
+
+    /** Lookups that found their settings. */
+    private long _hits;
+
+    /** Lookups that did not. */
+    private long _misses;
+
+    /** Lines forgotten. */
+    private long _evictions;
+
+}
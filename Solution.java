@@ -0,0 +1,47 @@
+package enigma;
+
+/** A candidate decipherment of a ciphertext: the machine settings, as a
+ *  Stop, the plaintext they give, and its score.
+ *  @author Jake Kim
+ */
+final class Solution {
+
+    /** A solution with settings KEY giving PLAINTEXT, which scores
+     *  SCORE. */
+    Solution(Stop key, String plaintext, double score) {
+        _key = key;
+        _plaintext = plaintext;
+        _score = score;
+    }
+
+    /** Return my settings. */
+    Stop key() {
+        return _key;
+    }
+
+    /** Return my plaintext. */
+    String plaintext() {
+        return _plaintext;
+    }
+
+    /** Return my plaintext's score. */
+    double score() {
+        return _score;
+    }
+
+    /** Return me as my settings line, my score and my plaintext. */
+    @Override
+    public String toString() {
+        return String.format("%s%n%.2f %s", _key, _score, _plaintext);
+    }
+
+    /** Settings. */
+    private final Stop _key;
+
+    /** Plaintext. */
+    private final String _plaintext;
+
+    /** Score of _plaintext. */
+    private final double _score;
+
+}
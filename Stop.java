@@ -0,0 +1,57 @@
+package enigma;
+
+/** A stop of a Bombe: a rotor order and setting at which a crib's menu is
+ *  consistent, together with the plugboard pairs that consistency
+ *  implies.  Letters the menu does not reach have no pair, so the
+ *  plugboard may be incomplete.
+ *  @author Jake Kim
+ */
+final class Stop {
+
+    /** A stop with the rotors named ROTORS, reflector first, at SETTING,
+     *  with plugboard CYCLES. */
+    Stop(String[] rotors, String setting, String cycles) {
+        _rotors = rotors.clone();
+        _setting = setting;
+        _cycles = cycles;
+    }
+
+    /** Return the names of my rotors, reflector first. */
+    String[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return my rotor setting, as for Machine.setRotors. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return my plugboard, in cycle notation. */
+    String plugboard() {
+        return _cycles;
+    }
+
+    /** Return me as a settings line for Main. */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder("*");
+        for (String name : _rotors) {
+            line.append(' ').append(name);
+        }
+        line.append(' ').append(_setting);
+        if (!_cycles.isEmpty()) {
+            line.append(' ').append(_cycles);
+        }
+        return line.toString();
+    }
+
+    /** Rotor names, reflector first. */
+    private final String[] _rotors;
+
+    /** Rotor setting. */
+    private final String _setting;
+
+    /** Plugboard cycles. */
+    private final String _cycles;
+
+}
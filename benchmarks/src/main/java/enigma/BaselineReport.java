@@ -0,0 +1,198 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Compares two JMH runs saved as CSV, such as a baseline from the main
+ *  branch and a run of a change, and prints the change in each score.
+ *  Benchmarks are matched by name, mode and parameters, and besides the
+ *  scores themselves, the bytes allocated per operation are compared.
+ *  Exits with code 1 if any score is worse by more than the threshold
+ *  percentage (by default THRESHOLD) and by more than the two runs'
+ *  combined error, so that a build may fail on a regression in the hot
+ *  path.  A score whose baseline is within EPSILON of 0, such as the
+ *  allocation of a benchmark that allocates nothing, has no meaningful
+ *  percentage change; its absolute change is printed instead, and is
+ *  never counted as a regression.
+ *
+ *  Usage: BaselineReport BASELINE.csv CURRENT.csv [THRESHOLD]
+ *  @author Jake Kim
+ */
+public final class BaselineReport {
+
+    /** Not instantiable. */
+    private BaselineReport() {
+    }
+
+    /** Compare the runs named by ARGS. */
+    public static void main(String... args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BaselineReport BASELINE.csv "
+                               + "CURRENT.csv [THRESHOLD]");
+            System.exit(2);
+        }
+        double threshold =
+            args.length > 2 ? Double.parseDouble(args[2]) : THRESHOLD;
+        Map<String, Score> baseline = read(args[0]);
+        Map<String, Score> current = read(args[1]);
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s%n", "Benchmark", "Baseline",
+                          "Current", "Change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score then = baseline.get(entry.getKey());
+            if (then == null) {
+                System.out.printf("%-60s %14s %14.3f %9s%n", entry.getKey(),
+                                  "-", now.value, "new");
+                continue;
+            }
+            double delta = now.value - then.value;
+            if (Math.abs(then.value) < EPSILON) {
+                System.out.printf("%-60s %14.3f %14.3f %+9.3f%n",
+                                  entry.getKey(), then.value, now.value,
+                                  delta);
+                continue;
+            }
+            double change = 100.0 * delta / then.value;
+            double worse = now.higherIsBetter() ? -change : change;
+            boolean regressed = worse > threshold
+                && Math.abs(delta) > now.error + then.error;
+            if (regressed) {
+                regressions += 1;
+            }
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%%%s%n",
+                              entry.getKey(), then.value, now.value, change,
+                              regressed ? "  REGRESSION" : "");
+        }
+        if (regressions > 0) {
+            System.out.printf("%d regression(s) worse than %.1f%%%n",
+                              regressions, threshold);
+            System.exit(1);
+        }
+    }
+
+    /** Return the scores in the JMH CSV file named NAME, keyed by
+     *  benchmark, mode and parameters. */
+    private static Map<String, Score> read(String name) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(name));
+        Map<String, Score> result = new LinkedHashMap<String, Score>();
+        if (lines.isEmpty()) {
+            return result;
+        }
+        List<String> header = fields(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            List<String> row = fields(line);
+            if (!tracked(row.get(benchmark))) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(row.get(benchmark));
+            key.append(' ').append(row.get(mode));
+            for (int i = unit + 1; i < row.size(); i += 1) {
+                if (!row.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).replace("Param: ",
+                                                                 ""))
+                        .append('=').append(row.get(i));
+                }
+            }
+            result.put(key.toString(),
+                       new Score(number(row.get(score)),
+                                 number(row.get(error)), row.get(unit)));
+        }
+        return result;
+    }
+
+    /** Return true iff the result named BENCHMARK is one I compare: a
+     *  primary score or the allocation per operation.  Other profiler
+     *  results, such as GC counts, are too noisy to compare. */
+    private static boolean tracked(String benchmark) {
+        return benchmark.indexOf(':') < 0
+            || benchmark.endsWith(ALLOCATION);
+    }
+
+    /** Return the fields of CSV line LINE. */
+    private static List<String> fields(String line) {
+        List<String> result = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length()
+                    && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i += 1;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                result.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        result.add(field.toString());
+        return result;
+    }
+
+    /** Return the number in TEXT, or 0 if there is none (as for the error
+     *  of a single-shot score). */
+    private static double number(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException excp) {
+            return 0;
+        }
+    }
+
+    /** One benchmark's result. */
+    private static final class Score {
+
+        /** A score of VALUE +- ERROR in UNIT. */
+        Score(double value, double error, String unit) {
+            this.value = value;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        /** Return true iff larger values of me are better, as for
+         *  throughput but not for times or allocation. */
+        boolean higherIsBetter() {
+            return unit.startsWith("ops/");
+        }
+
+        /** The score. */
+        private final double value;
+
+        /** Half-width of its confidence interval. */
+        private final double error;
+
+        /** Its units. */
+        private final String unit;
+    }
+
+    /** Suffix of the GC profiler's allocation-per-operation results. */
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    /** Largest baseline score treated as 0, to which a change cannot be
+     *  taken as a percentage. */
+    static final double EPSILON = 1e-3;
+
+    /** Default percentage by which a score may worsen before it is
+     *  reported as a regression. */
+    static final double THRESHOLD = 5.0;
+
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Costs of converting COUNT messages of about LENGTH characters, each
+ *  under its own settings, by a LaneBatch with either kernel and, for
+ *  comparison, by one MachineState per message.  The settings are
+ *  compiled once, in setUp; only conversion is measured.
+ *  @author Jake Kim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "--add-modules=jdk.incubator.vector" })
+public class BatchBenchmark {
+
+    /** Number of messages. */
+    @Param({ "64", "4096" })
+    public int count;
+
+    /** Typical message length. */
+    @Param({ "100" })
+    public int length;
+
+    /** Compile COUNT settings lines over all five-slot rotor orders
+     *  of the naval rotors, and make the messages. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(Fixtures.SEED);
+        MessageProcessor processor =
+            new MessageProcessor(Fixtures.configuration());
+        String[] moving = { "I", "II", "III", "IV", "V" };
+        _settings = new CompiledSettings[count];
+        _messages = new int[count][];
+        for (int i = 0; i < count; i += 1) {
+            StringBuilder line = new StringBuilder("* B Beta");
+            for (int k = 0; k < 3; k += 1) {
+                line.append(' ').append(moving[(i + k) % moving.length]);
+            }
+            line.append(' ');
+            for (int k = 0; k < 4; k += 1) {
+                line.append((char) ('A' + random.nextInt(LETTERS)));
+            }
+            line.append(" (AQ) (BZ)");
+            processor.setUp(line.toString());
+            _settings[i] = processor.machine().compile();
+            _messages[i] = Fixtures.indices(length / 2
+                                            + random.nextInt(length));
+        }
+        _vector = BatchConverter.defaultKernel();
+    }
+
+    /** Convert by the scalar kernel. */
+    @Benchmark
+    public int[] scalarLanes() {
+        LaneBatch batch = new LaneBatch(_settings, _messages);
+        BatchConverter.SCALAR.convert(batch);
+        return batch.out();
+    }
+
+    /** Convert by the vector kernel, or the scalar one if the vector
+     *  kernel is missing. */
+    @Benchmark
+    public int[] vectorLanes() {
+        LaneBatch batch = new LaneBatch(_settings, _messages);
+        _vector.convert(batch);
+        return batch.out();
+    }
+
+    /** Convert each message on a MachineState of its own. */
+    @Benchmark
+    public int perMessage() {
+        int sum = 0;
+        for (int i = 0; i < count; i += 1) {
+            MachineState state = _settings[i].spec().newState();
+            state.loadPositions(_settings[i].positions(), 0);
+            state.setPlugboard(_settings[i].plugTable());
+            for (int c : _messages[i]) {
+                sum += state.convert(c);
+            }
+        }
+        return sum;
+    }
+
+    /** Letters in the alphabet. */
+    private static final int LETTERS = 26;
+
+    /** Compiled settings, by message. */
+    private CompiledSettings[] _settings;
+
+    /** Messages, as indices. */
+    private int[][] _messages;
+
+    /** The kernel BatchConverter chooses. */
+    private LaneKernel _vector;
+
+}
@@ -0,0 +1,43 @@
+package enigma;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks selected by the usual JMH command-line options,
+ *  always with the GC profiler, which reports allocation per operation.
+ *  Unless told otherwise, results also go to RESULT_FILE as CSV, which
+ *  BaselineReport compares against a saved run.
+ *  @author Jake Kim
+ */
+public final class Benchmarks {
+
+    /** Not instantiable. */
+    private Benchmarks() {
+    }
+
+    /** Run the benchmarks as ARGS specify. */
+    public static void main(String... args)
+        throws CommandLineOptionException, RunnerException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+            .parent(options)
+            .addProfiler(GCProfiler.class);
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.CSV);
+        }
+        if (!options.getResult().hasValue()) {
+            builder.result(RESULT_FILE);
+        }
+        new Runner(builder.build()).run();
+    }
+
+    /** Default results file. */
+    static final String RESULT_FILE = "jmh-result.csv";
+
+}
@@ -0,0 +1,128 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Per-character costs of the pieces a machine is made of: permutations,
+ *  rotor conversions and notch tests.  Each benchmark handles BATCH
+ *  characters, so that scores are in nanoseconds per character.
+ *  @author Jake Kim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ComponentBenchmark {
+
+    /** Build the permutation and rotor of naval rotor I, and the input. */
+    @Setup
+    public void setUp() {
+        Alphabet alphabet = Fixtures.alphabet();
+        _permutation = new Permutation(Fixtures.ROTOR_I, alphabet);
+        _rotor = new MovingRotor("I", _permutation, "Q");
+        _indices = Fixtures.indices(BATCH);
+        _chars = Fixtures.message(BATCH).toCharArray();
+    }
+
+    /** Permute each index of the input. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int permute() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _permutation.permute(p);
+        }
+        return sum;
+    }
+
+    /** Invert each index of the input. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int invert() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _permutation.invert(p);
+        }
+        return sum;
+    }
+
+    /** Permute each character of the input. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int permuteChar() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _permutation.permute(c);
+        }
+        return sum;
+    }
+
+    /** Pass each index of the input forward through the rotor at each of
+     *  its positions in turn. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int convertForward() {
+        int sum = 0;
+        for (int p : _indices) {
+            _rotor.advance();
+            sum += _rotor.convertForward(p);
+        }
+        return sum;
+    }
+
+    /** Pass each index of the input backward through the rotor at each of
+     *  its positions in turn. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int convertBackward() {
+        int sum = 0;
+        for (int p : _indices) {
+            _rotor.advance();
+            sum += _rotor.convertBackward(p);
+        }
+        return sum;
+    }
+
+    /** Test the rotor's notch at each of its positions in turn. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int atNotch() {
+        int count = 0;
+        for (int i = 0; i < BATCH; i += 1) {
+            _rotor.advance();
+            if (_rotor.atNotch()) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Characters handled per benchmark invocation. */
+    static final int BATCH = 1 << 10;
+
+    /** Naval rotor I's permutation. */
+    private Permutation _permutation;
+
+    /** Naval rotor I. */
+    private Rotor _rotor;
+
+    /** Random indices into the alphabet. */
+    private int[] _indices;
+
+    /** Random letters. */
+    private char[] _chars;
+
+}
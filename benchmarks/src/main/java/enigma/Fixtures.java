@@ -0,0 +1,125 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/** Machines, messages and input files shared by the benchmarks.
+ *  @author Jake Kim
+ */
+final class Fixtures {
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+
+    /** The standard naval configuration, as Main reads it. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + "5 3\n"
+        + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "V MZ (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + "VI MZM (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + "VII MZM (ANOUPFRIMBZTLWKSVEGCJYDHXQ)\n"
+        + "VIII MZM (AFLSETWUNDHOZVICQ) (BKJ) (GRYPM)\n"
+        + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "Gamma N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n"
+        + "C R (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "     (QZ) (SX) (UY)\n";
+
+    /** The standard settings line. */
+    static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Cycles of naval rotor I. */
+    static final String ROTOR_I = "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) "
+        + "(JZ) (S)";
+
+    /** Seed of all random messages, so that runs are comparable. */
+    static final long SEED = 0x5EED;
+
+    /** Return CONFIG, parsed. */
+    static Configuration configuration() {
+        byte[] text = CONFIG.getBytes(StandardCharsets.US_ASCII);
+        return Configuration.parse(
+            new LineReader(Channels.newChannel(new ByteArrayInputStream(text)),
+                           StandardCharsets.US_ASCII));
+    }
+
+    /** Return a machine set up by SETTINGS. */
+    static Machine machine() {
+        MessageProcessor processor = new MessageProcessor(configuration());
+        processor.setUp(SETTINGS);
+        return processor.machine();
+    }
+
+    /** Return the upper-case alphabet. */
+    static Alphabet alphabet() {
+        return new Alphabet();
+    }
+
+    /** Return a message of LENGTH random letters. */
+    static String message(int length) {
+        Random random = new Random(SEED);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            chars[i] = (char) ('A' + random.nextInt(ALPHABET_SIZE));
+        }
+        return new String(chars);
+    }
+
+    /** Return LENGTH random indices into the upper-case alphabet. */
+    static int[] indices(int length) {
+        Random random = new Random(SEED);
+        int[] result = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = random.nextInt(ALPHABET_SIZE);
+        }
+        return result;
+    }
+
+    /** Write CONFIG and an input of about BYTES bytes for Main, in
+     *  sections of SECTION message lines, to new files in DIR.  Return
+     *  the paths of the configuration and the input. */
+    static Path[] writeFiles(Path dir, long bytes, int section) {
+        Charset ascii = StandardCharsets.US_ASCII;
+        Path config = dir.resolve("default.conf");
+        Path input = dir.resolve("input.txt");
+        StringBuilder text = new StringBuilder();
+        String line = message(LINE);
+        int lines = 0;
+        while (text.length() < bytes) {
+            if (lines % section == 0) {
+                text.append(SETTINGS).append('\n');
+            }
+            int k = lines % LINE;
+            text.append(line, k, LINE).append(line, 0, k).append('\n');
+            lines += 1;
+        }
+        try {
+            Files.write(config, CONFIG.getBytes(ascii));
+            Files.write(input, text.toString().getBytes(ascii));
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+        return new Path[] { config, input };
+    }
+
+    /** Size of the upper-case alphabet. */
+    private static final int ALPHABET_SIZE = 26;
+
+    /** Length of each message line written for Main. */
+    private static final int LINE = 72;
+
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Costs of converting whole messages of SIZE characters on a machine set
+ *  up with the standard naval settings.  The machine is not reset between
+ *  invocations; its stepping is the same work at any position.
+ *  @author Jake Kim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MachineBenchmark {
+
+    /** Message length. */
+    @Param({ "16", "1024", "65536" })
+    public int size;
+
+    /** Build the machine and a message of SIZE characters. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine();
+        _message = Fixtures.message(size);
+        _chars = _message.toCharArray();
+        _indices = Fixtures.indices(size);
+        _output = new char[size];
+    }
+
+    /** Convert the message one index at a time. */
+    @Benchmark
+    public int convertInt() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _machine.convert(p);
+        }
+        return sum;
+    }
+
+    /** Convert the message as a String. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Convert the message between arrays, as Main does. */
+    @Benchmark
+    public char[] convertArray() {
+        _machine.convert(_chars, 0, size, _output, 0);
+        return _output;
+    }
+
+    /** The machine. */
+    private Machine _machine;
+
+    /** The message as a String. */
+    private String _message;
+
+    /** The message as characters. */
+    private char[] _chars;
+
+    /** The message as alphabet indices. */
+    private int[] _indices;
+
+    /** Output buffer for convertArray. */
+    private char[] _output;
+
+}
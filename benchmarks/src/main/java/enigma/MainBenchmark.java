@@ -0,0 +1,85 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end cost of running Main on a generated input file of MEGABYTES
+ *  megabytes, from reading the configuration to writing the output
+ *  file, as the command line would.
+ *  @author Jake Kim
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainBenchmark {
+
+    /** Size of the input, in megabytes. */
+    @Param({ "1", "16" })
+    public int megabytes;
+
+    /** Message lines per settings line in the input. */
+    @Param({ "1000" })
+    public int section;
+
+    /** Threads given to --parallel; 1 processes serially. */
+    @Param({ "1", "4" })
+    public int threads;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        Path[] files =
+            Fixtures.writeFiles(_dir, (long) megabytes << MEGA, section);
+        _args = new String[] {
+            "--parallel=" + threads, files[0].toString(),
+            files[1].toString(), _dir.resolve("output.txt").toString()
+        };
+    }
+
+    /** Remove the files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(_dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(_dir);
+    }
+
+    /** Run Main on the input. */
+    @Benchmark
+    public void process() {
+        Main.main(_args);
+    }
+
+    /** Log2 of a megabyte. */
+    private static final int MEGA = 20;
+
+    /** Directory holding the files. */
+    private Path _dir;
+
+    /** Arguments to Main. */
+    private String[] _args;
+
+}
@@ -0,0 +1,111 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A LaneKernel converting the lanes of a LaneBatch as many at a time as
+ *  fit in the preferred SIMD register, with the rotor settings held in
+ *  vectors while a time step runs and the wirings, notches and plugboards
+ *  gathered by index.  Lanes left over at the end of a time step go
+ *  through the scalar reference, LaneBatch.convert.
+ *
+ *  This class needs the incubating module jdk.incubator.vector both to
+ *  compile and to run, and so lives apart from the other sources; see
+ *  BatchConverter and the "vector" target of the Makefile.
+ *  @author Jake Kim
+ */
+final class VectorLanes implements LaneKernel {
+
+    @Override
+    public void convert(LaneBatch batch) {
+        int vlen = SPECIES.length();
+        int[] index = new int[vlen];
+        IntVector[] p = new IntVector[batch.slots()];
+        for (int t = 0; t < batch.steps(); t += 1) {
+            int active = batch.active(t), lane = 0;
+            for (; lane + vlen <= active; lane += vlen) {
+                convert(batch, t, lane, p, index);
+            }
+            batch.convert(t, lane, active);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector" + SPECIES.length();
+    }
+
+    /** Convert time step T of the SPECIES.length() lanes of BATCH from
+     *  LANE, using P to hold their rotor settings and INDEX for gather
+     *  indices. */
+    private static void convert(LaneBatch batch, int t, int lane,
+                                IntVector[] p, int[] index) {
+        int n = batch.lanes(), size = batch.size(), slots = batch.slots();
+        int[] positions = batch.positions(), rotates = batch.rotates();
+        int[] wireBase = batch.wireBase();
+        IntVector carry = IntVector.broadcast(SPECIES, 1);
+        for (int k = slots - 1; k >= 0; k -= 1) {
+            int i = k * n + lane;
+            IntVector posn = IntVector.fromArray(SPECIES, positions, i);
+            IntVector push;
+            if (k > 0) {
+                IntVector notch =
+                    gather(batch.notches(),
+                           IntVector.fromArray(SPECIES, batch.notchBase(), i)
+                           .add(posn), index);
+                push = IntVector.fromArray(SPECIES, rotates, i - n)
+                    .and(notch);
+            } else {
+                push = IntVector.zero(SPECIES);
+            }
+            posn = posn.add(carry.or(push)
+                            .and(IntVector.fromArray(SPECIES, rotates, i)));
+            VectorMask<Integer> wrapped = posn.compare(VectorOperators.EQ,
+                                                       size);
+            posn = posn.blend(0, wrapped);
+            posn.intoArray(positions, i);
+            p[k] = posn;
+            carry = push;
+        }
+        int row = batch.rowStart(t) + lane;
+        int[] plug = batch.plugboards();
+        IntVector plugBase =
+            IntVector.fromArray(SPECIES, batch.plugBase(), lane);
+        IntVector c = gather(plug, plugBase.add(
+            IntVector.fromArray(SPECIES, batch.text(), row)), index);
+        for (int k = slots - 1; k >= 0; k -= 1) {
+            IntVector base = IntVector.fromArray(SPECIES, wireBase,
+                                                 k * n + lane);
+            c = unshift(gather(batch.forward(), base.add(c).add(p[k]),
+                               index).sub(p[k]), size);
+        }
+        for (int k = 1; k < slots; k += 1) {
+            IntVector base = IntVector.fromArray(SPECIES, wireBase,
+                                                 k * n + lane);
+            c = unshift(gather(batch.backward(), base.add(c).add(p[k]),
+                               index).sub(p[k]), size);
+        }
+        gather(plug, plugBase.add(c), index).intoArray(batch.out(), row);
+    }
+
+    /** Return the elements of TABLE at the indices in INDICES, using
+     *  INDEX, which has one element per lane, to pass them. */
+    private static IntVector gather(int[] table, IntVector indices,
+                                    int[] index) {
+        indices.intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+
+    /** Return C with SIZE added to its negative elements. */
+    private static IntVector unshift(IntVector c, int size) {
+        return c.add(c.lanewise(VectorOperators.ASHR, Integer.SIZE - 1)
+                     .and(size));
+    }
+
+    /** The vector shape used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+}